@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import static gitlet.GitletConstants.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 22:30
+ * @Description changed-path Bloom filters, like git's commit-graph BIDX/BDAT chunks. for every commit of the
+ * commit-graph, a small Bloom filter holds the paths changed against its first parent (all files of a root commit),
+ * and the leading directories of these paths. log -- [path] skips a commit whose filter does not have the path
+ * without reading it. a filter never misses a changed path, but may have a path which is not changed
+ * (about 1% of the commits), so a commit whose filter has the path is still read and compared.
+ * <p>
+ * commit-graph-bloom layout: [magic][version][count] then count filters of FILTER_LENGTH bytes, the filter at
+ * position i is the filter of the record at position i of commit-graph. a path sets HASH_COUNT bits
+ * (h1 + i * h2) mod FILTER_BITS, h1 and h2 are the first two ints of sha1(path).
+ * <p>
+ * a filter with every bit set has every path: it is written for a commit which changes more than MAX_PATHS paths,
+ * and for the records written before the filters were (see rebuild(), run by migrate).
+ */
+public class ChangedPathUtils {
+    private static final int BLOOM_MAGIC = 0x47434231; // "GCB1"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 12;
+    private static final int FILTER_LENGTH = 64;
+    private static final int FILTER_BITS = FILTER_LENGTH * 8;
+    private static final int HASH_COUNT = 7;
+    /** about 10 bits for a path, so a path which is not changed passes a filter about 1% of the time */
+    private static final int MAX_PATHS = FILTER_BITS / 10;
+
+    /** the filters read from the file at the first use in one command, filter i is filters[i * FILTER_LENGTH, ...) */
+    private static byte[] filters;
+    /** number of filters in the file */
+    private static int filterCount;
+
+    /**
+     * forget the filters read by this process, they are read again at the next use. see CommitGraphUtils.
+     */
+    static void reset() {
+        filters = null;
+    }
+
+    /**
+     * delete the filters, for a commit-graph which is started again from nothing
+     */
+    static void delete() {
+        COMMIT_GRAPH_BLOOM_FILE.delete();
+        filters = null;
+    }
+
+    /**
+     * @return bit positions of a path, a path has them all set in the filter of a commit which changes it
+     */
+    public static int[] hashes(String path) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        int h1 = buffer.getInt(0);
+        int h2 = buffer.getInt(4);
+        int[] result = new int[HASH_COUNT];
+        for (int i = 0; i < HASH_COUNT; ++i) {
+            result[i] = Math.floorMod(h1 + i * h2, FILTER_BITS);
+        }
+        return result;
+    }
+
+    /**
+     * @param position position of the commit in the commit-graph
+     * @param hashes see hashes()
+     * @return false if the commit does not change the path. a commit without a filter may change any path
+     */
+    public static boolean mayChange(int position, int[] hashes) {
+        load();
+        if (position >= filterCount) {
+            return true;
+        }
+        int offset = position * FILTER_LENGTH;
+        for (int bit : hashes) {
+            if ((filters[offset + bit / 8] & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * write the filter of a commit which has just been added to the commit-graph at position.
+     * positions between the last filter and this one get filters with every bit set.
+     */
+    static void addFilter(int position, Commit commit) {
+        load();
+        byte[] filter = makeFilter(commit);
+        byte[] written = new byte[(Math.max(position - filterCount, 0) + 1) * FILTER_LENGTH];
+        int first = Math.min(position, filterCount);
+        Arrays.fill(written, 0, written.length - FILTER_LENGTH, (byte) 0xff);
+        System.arraycopy(filter, 0, written, written.length - FILTER_LENGTH, FILTER_LENGTH);
+        writeFilters(first, written);
+    }
+
+    /**
+     * compute the filters of positions [0, count) of the commit-graph again, for a graph written before the filters
+     * @param commitIds id of the commit at every position
+     */
+    static void rebuild(List<String> commitIds) {
+        byte[] written = new byte[commitIds.size() * FILTER_LENGTH];
+        for (int i = 0; i < commitIds.size(); ++i) {
+            System.arraycopy(makeFilter(CommitUtils.readCommit(commitIds.get(i))), 0, written, i * FILTER_LENGTH,
+                    FILTER_LENGTH);
+        }
+        COMMIT_GRAPH_BLOOM_FILE.delete();
+        filters = null;
+        writeFilters(0, written);
+    }
+
+    /**
+     * @return the changed paths of a commit: files which differ from its first parent, and their directories
+     */
+    public static Set<String> changedPaths(Commit commit) {
+        Commit parent = CommitUtils.readCommit(commit.getParentId());
+        Set<String> files;
+        if (parent == null) {
+            files = commit.getTreeId() != null ? TreeUtils.diff(null, commit.getTreeId()).keySet()
+                    : commit.getFileVersionMap().keySet();
+        } else {
+            files = CommitUtils.diffCommits(parent, commit).keySet();
+        }
+        Set<String> result = new HashSet<>();
+        for (String file : files) {
+            for (String path = file; result.add(path) && path.contains("/"); ) {
+                path = path.substring(0, path.lastIndexOf('/'));
+            }
+        }
+        return result;
+    }
+
+    private static byte[] makeFilter(Commit commit) {
+        byte[] filter = new byte[FILTER_LENGTH];
+        Set<String> paths = changedPaths(commit);
+        if (paths.size() > MAX_PATHS) {
+            Arrays.fill(filter, (byte) 0xff);
+            return filter;
+        }
+        for (String path : paths) {
+            for (int bit : hashes(path)) {
+                filter[bit / 8] |= (byte) (1 << (bit % 8));
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * write filters from position first, the filters are written before the count, like commit-graph records
+     */
+    private static void writeFilters(int first, byte[] written) {
+        int newCount = first + written.length / FILTER_LENGTH;
+        try (RandomAccessFile file = new RandomAccessFile(COMMIT_GRAPH_BLOOM_FILE, "rw")) {
+            if (file.length() < HEADER_LENGTH) {
+                file.writeInt(BLOOM_MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(0);
+            }
+            file.seek(HEADER_LENGTH + (long) first * FILTER_LENGTH);
+            file.write(written);
+            file.seek(8);
+            file.writeInt(newCount);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write commit-graph-bloom");
+        }
+        if (filters != null) {
+            if (filters.length < newCount * FILTER_LENGTH) {
+                filters = Arrays.copyOf(filters, Math.max(newCount, 2 * filterCount) * FILTER_LENGTH);
+            }
+            System.arraycopy(written, 0, filters, first * FILTER_LENGTH, written.length);
+            filterCount = newCount;
+        }
+    }
+
+    /**
+     * read the filter file once. a missing or unknown file has no filters, every commit may change any path
+     */
+    private static void load() {
+        if (filters != null) {
+            return;
+        }
+        filters = new byte[0];
+        filterCount = 0;
+        if (!COMMIT_GRAPH_BLOOM_FILE.exists()) {
+            return;
+        }
+        ByteBuffer bloom;
+        try {
+            bloom = ByteBuffer.wrap(Files.readAllBytes(COMMIT_GRAPH_BLOOM_FILE.toPath()));
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read commit-graph-bloom");
+        }
+        if (bloom.limit() < HEADER_LENGTH || bloom.getInt(0) != BLOOM_MAGIC || bloom.getInt(4) != VERSION) {
+            COMMIT_GRAPH_BLOOM_FILE.delete();
+            return;
+        }
+        filterCount = Math.min(bloom.getInt(8), (bloom.limit() - HEADER_LENGTH) / FILTER_LENGTH);
+        filters = Arrays.copyOfRange(bloom.array(), HEADER_LENGTH, HEADER_LENGTH + filterCount * FILTER_LENGTH);
+    }
+}
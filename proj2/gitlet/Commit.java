@@ -19,6 +19,9 @@ import java.util.TimeZone;
  * this class will be serialized to a file in [commits] folder in [.gitlet]
  */
 public class Commit implements Serializable {
+    /** pinned to the value computed for the original fields, so commits written before still deserialize */
+    private static final long serialVersionUID = 7694033574448478546L;
+
     /** The message of this Commit. */
     private String message;
     /** the commit time stamp */
@@ -30,14 +33,24 @@ public class Commit implements Serializable {
     /** second Parent */
     private String secondParentId;
 
-    /** store flat file names and its version(represented by SHA-1) */
+    /** store flat file names and its version(represented by SHA-1)
+     * update: only commits written before tree objects store it, it is null in a commit with a tree */
     private HashMap<String, String> fileVersionMap;
 
+    /** id of the root tree of the files (see TreeUtils), it is set when the commit is saved */
+    private String treeId;
+
+    /** the files of a new commit, or of a commit with a tree (read from the tree at the first use). never written */
+    private transient HashMap<String, String> treeFiles;
+
+    /** the id this commit was read or saved with, never written to file. every setter clears it. */
+    private transient String id;
+
     /***
      * fileVersionMap will never be null.
      */
     public Commit() {
-        fileVersionMap = new HashMap<>();
+        treeFiles = new HashMap<>();
     }
 
     public String getMessage() {
@@ -56,43 +69,113 @@ public class Commit implements Serializable {
         return secondParentId;
     }
 
+    /**
+     * @note a commit with a tree reads all its trees here, use CommitUtils.diffCommits() to compare two commits
+     */
     public HashMap<String, String> getFileVersionMap() {
-        return fileVersionMap;
+        if (fileVersionMap != null) {
+            return fileVersionMap;
+        }
+        if (treeFiles == null) {
+            treeFiles = treeId == null ? new HashMap<>() : TreeUtils.readFiles(treeId);
+        }
+        return treeFiles;
+    }
+
+    /**
+     * @return id of the root tree, null for a commit written before tree objects or not saved yet
+     */
+    public String getTreeId() {
+        return treeId;
+    }
+
+    /**
+     * @return the memoized id, or null if it is unknown (e.g. the commit is changed after it was read)
+     * @note use CommitUtils.getCommitId(), which computes the id if it is unknown
+     */
+    public String getId() {
+        return id;
     }
 
     public void setMessage(String message) {
         this.message = message;
+        this.id = null;
     }
 
     public void setCommitTime(Date commitTime) {
         this.commitTime = commitTime;
+        this.id = null;
     }
 
     public void setParentId(String ParentId) {
         this.parentId = ParentId;
+        this.id = null;
     }
 
     public void setSecondParentId(String secondParentId) {
         this.secondParentId = secondParentId;
+        this.id = null;
     }
 
     public void setFileVersionMap(HashMap<String, String> fileVersionMap) {
-        this.fileVersionMap = fileVersionMap;
+        this.fileVersionMap = null;
+        this.treeFiles = fileVersionMap;
+        this.treeId = null;
+        this.id = null;
+    }
+
+    /**
+     * @param treeId id of the tree written from getFileVersionMap()
+     */
+    public void setTreeId(String treeId) {
+        this.treeFiles = getFileVersionMap();
+        this.fileVersionMap = null;
+        this.treeId = treeId;
+        this.id = null;
+    }
+
+    public void setId(String id) {
+        this.id = id;
     }
 
     /***
      * print key info for log command
      */
     public void printCommitInfo() {
-        SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("GMT-8"));
-        System.out.println("===");
-        System.out.println("commit " + CommitUtils.getCommitId(this));
+        System.out.print(getCommitInfo(logDateFormat()));
+    }
+
+    /**
+     * the key info printed by log, for commands which print many commits to a buffer
+     * @param sdf see logDateFormat(), it is made once for all commits
+     */
+    public String getCommitInfo(SimpleDateFormat sdf) {
+        return formatCommitInfo(CommitUtils.getCommitId(this), parentId, secondParentId, commitTime, message, sdf);
+    }
+
+    /**
+     * the key info printed by log, from the fields of a commit which is not read (see CommitMetaUtils)
+     */
+    public static String formatCommitInfo(String id, String parentId, String secondParentId, Date commitTime,
+                                          String message, SimpleDateFormat sdf) {
+        StringBuilder info = new StringBuilder();
+        info.append("===\n");
+        info.append("commit ").append(id).append("\n");
         if (secondParentId != null) {
-            System.out.println("Merge: " + parentId.substring(0, 7) + " " + secondParentId.substring(0, 7));
+            info.append("Merge: ").append(parentId, 0, 7).append(" ").append(secondParentId, 0, 7).append("\n");
         }
-        System.out.println("Date: " + sdf.format(this.commitTime));
-        System.out.println(this.message);
-        System.out.println();
+        info.append("Date: ").append(sdf.format(commitTime)).append("\n");
+        info.append(message).append("\n");
+        info.append("\n");
+        return info.toString();
+    }
+
+    /**
+     * @return the format of the date in log, the time zone is GMT-8. it is not thread-safe
+     */
+    public static SimpleDateFormat logDateFormat() {
+        SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("GMT-8"));
+        return sdf;
     }
 }
@@ -0,0 +1,453 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 13:20
+ * @Description the commit-graph file (.gitlet/commit-graph) keeps the shape of the history apart from the commits,
+ * so walking the history (log, split point of merge, push) never reads a commit object and its fileVersionMap.
+ * <p>
+ * layout: [magic][version][count] then count fixed-width records of
+ * [id(20 bytes)][first parent position(4 bytes)][second parent position(4 bytes)][commit time(8 bytes)][generation(4 bytes)].
+ * a position is the index of a record in the file, -1 for no parent. records are append-only and parents are
+ * always written before their children, so a new commit is just one more record at the end.
+ * generation is 1 for a root commit, otherwise 1 + the max generation of its parents.
+ * <p>
+ * commits which are not in the graph yet (e.g. a repository created by an older version) are added lazily
+ * from their commit objects the first time they are asked for.
+ * <p>
+ * update: the records are kept in arrays indexed by position, and ids are looked up in an open-addressing table
+ * of positions. no object is made for a record, an id string is made only when it is returned,
+ * so a graph of a million commits is loaded in a fraction of a second.
+ * <p>
+ * update: every record has a changed-path Bloom filter at the same position of commit-graph-bloom,
+ * see ChangedPathUtils.
+ */
+public class CommitGraphUtils {
+    private static final int GRAPH_MAGIC = 0x47434731; // "GCG1"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 12;
+    private static final int ID_LENGTH = 20;
+    private static final int RECORD_LENGTH = ID_LENGTH + 4 + 4 + 8 + 4;
+    private static final int NO_PARENT = -1;
+    /** the sides a commit is reached from in mergeBase() */
+    private static final int PAINT_1 = 1;
+    private static final int PAINT_2 = 2;
+
+    /** number of records. the arrays below are read from the graph file at the first use in one command */
+    private static int count;
+    /** id of the record at position i is ids[i * ID_LENGTH, (i + 1) * ID_LENGTH) */
+    private static byte[] ids;
+    private static int[] parents;
+    private static int[] secondParents;
+    private static long[] commitTimes;
+    private static int[] generations;
+    /** commit id --> position + 1, 0 for an empty slot. its length is a power of two, at least twice count */
+    private static int[] table;
+    /** stat data of the graph file when this process read or appended it */
+    private static IndexUtils.FileStat graphFileStat;
+
+    /**
+     * forget the graph read by this process if another process has changed the file since, see ServeUtils.
+     * appending to a graph which is behind the file would overwrite the records of the other process.
+     */
+    public static void reloadIfChanged() {
+        if (ids == null) {
+            return;
+        }
+        IndexUtils.FileStat current = IndexUtils.FileStat.of(COMMIT_GRAPH_FILE);
+        if (graphFileStat == null ? current != null : !graphFileStat.sameAs(current)) {
+            ids = null;
+            ChangedPathUtils.reset();
+        }
+    }
+
+    /**
+     * add a commit which has just been saved to the graph, it is called by CommitUtils.saveCommit()
+     */
+    public static void addCommit(String commitId, Commit commit) {
+        load();
+        if (find(commitId) != NO_PARENT) {
+            return;
+        }
+        addCommit(commit.getParentId()); // parents must be written first
+        addCommit(commit.getSecondParentId());
+        append(commitId, commit);
+    }
+
+    /**
+     * make sure the commit and all its ancestors are in the graph, they are read from commit objects if not.
+     * it is used after fetch, and for repositories whose graph is missing or behind.
+     */
+    public static void addCommit(String commitId) {
+        if (commitId != null) {
+            position(commitId);
+        }
+    }
+
+    /**
+     * @return parent ids of a commit, the first parent comes first. empty for the initial commit
+     */
+    public static List<String> getParentIds(String commitId) {
+        int position = position(commitId);
+        List<String> result = new ArrayList<>(2);
+        if (parents[position] != NO_PARENT) {
+            result.add(idAt(parents[position]));
+        }
+        if (secondParents[position] != NO_PARENT) {
+            result.add(idAt(secondParents[position]));
+        }
+        return result;
+    }
+
+    /**
+     * a commit is added to the graph only after its parents, so all the ancestors of a commit in the graph
+     * are in the repository (they have been read)
+     * @return true if the commit is in the graph, it is not added if it is not
+     */
+    public static boolean contains(String commitId) {
+        load();
+        return find(commitId) != NO_PARENT;
+    }
+
+    /**
+     * @return the number of commits in the graph. commits which have not been used since they were written by an
+     * older version may be missing
+     */
+    public static int commitCount() {
+        load();
+        return count;
+    }
+
+    public static int getGeneration(String commitId) {
+        int position = position(commitId);
+        return generations[position];
+    }
+
+    /**
+     * @return commit time in milliseconds
+     */
+    public static long getCommitTime(String commitId) {
+        int position = position(commitId);
+        return commitTimes[position];
+    }
+
+    /**
+     * @param pathHashes see ChangedPathUtils.hashes()
+     * @return false if the commit does not change the path (against its first parent), by its changed-path filter.
+     * true means it may change the path, the commit has to be compared to know.
+     */
+    public static boolean mayChangePath(String commitId, int[] pathHashes) {
+        return ChangedPathUtils.mayChange(position(commitId), pathHashes);
+    }
+
+    /**
+     * compute the changed-path filters of all commits in the graph, for a graph written before the filters.
+     * it is run by migrate.
+     */
+    public static void rebuildChangedPaths() {
+        load();
+        List<String> commitIds = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            commitIds.add(idAt(i));
+        }
+        ChangedPathUtils.rebuild(commitIds);
+    }
+
+    /**
+     * trace back to the initial commit by first parents, include the commit itself
+     * @return commit ids, newest commit first
+     */
+    public static List<String> firstParentChain(String commitId) {
+        List<String> result = new ArrayList<>();
+        int position = position(commitId);
+        while (position != NO_PARENT) {
+            result.add(idAt(position));
+            position = parents[position];
+        }
+        return result;
+    }
+
+    /**
+     * like firstParentChain(), but the chain is walked lazily as the ids are taken, so a caller which stops early
+     * (e.g. log -n) never walks the rest of the history
+     */
+    public static Iterator<String> firstParentIterator(String commitId) {
+        int start = position(commitId);
+        return new Iterator<String>() {
+            private int position = start;
+
+            @Override
+            public boolean hasNext() {
+                return position != NO_PARENT;
+            }
+
+            @Override
+            public String next() {
+                if (position == NO_PARENT) {
+                    throw new NoSuchElementException();
+                }
+                String id = idAt(position);
+                position = parents[position];
+                return id;
+            }
+        };
+    }
+
+    /**
+     * all ancestors of a commit, include the commit itself.
+     * the order is depth-first: a commit, then ancestors of its first parent, then those of its second parent.
+     * @return commit ids
+     */
+    public static List<String> ancestors(String commitId) {
+        List<String> result = new ArrayList<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(position(commitId));
+        boolean[] visited = new boolean[count];
+        while (!stack.isEmpty()) {
+            int position = stack.pop();
+            if (visited[position]) {
+                continue;
+            }
+            visited[position] = true;
+            result.add(idAt(position));
+            if (secondParents[position] != NO_PARENT) {
+                stack.push(secondParents[position]);
+            }
+            if (parents[position] != NO_PARENT) {
+                stack.push(parents[position]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * find the best common ancestor of two commits (the split point of merge), like git's merge-base.
+     * commits are walked from both commits at once in a priority queue, the highest generation first (the latest
+     * commit time for the same generation), every commit is painted with the sides it is reached from.
+     * since parents always have lower generations than their children, the paint of a commit is final when it
+     * is taken from the queue, so the first commit painted by both sides is a common ancestor, and no other common
+     * ancestor is its descendant. only commits newer than the split point are walked, not the whole history.
+     * @return commit id, null if the two commits have no common ancestor
+     */
+    public static String mergeBase(String commitId1, String commitId2) {
+        int position1 = position(commitId1);
+        int position2 = position(commitId2);
+        Map<Integer, Integer> paints = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+            if (generations[a] != generations[b]) {
+                return Integer.compare(generations[b], generations[a]);
+            }
+            return Long.compare(commitTimes[b], commitTimes[a]);
+        });
+        paints.merge(position1, PAINT_1, (x, y) -> x | y);
+        paints.merge(position2, PAINT_2, (x, y) -> x | y);
+        queue.add(position1);
+        if (position2 != position1) {
+            queue.add(position2);
+        }
+        while (!queue.isEmpty()) {
+            int position = queue.poll();
+            int paint = paints.get(position);
+            if (paint == (PAINT_1 | PAINT_2)) {
+                return idAt(position);
+            }
+            for (int parent : new int[]{parents[position], secondParents[position]}) {
+                if (parent == NO_PARENT) {
+                    continue;
+                }
+                Integer parentPaint = paints.get(parent);
+                if (parentPaint == null) {
+                    queue.add(parent);
+                    paints.put(parent, paint);
+                } else {
+                    paints.put(parent, parentPaint | paint);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return position of the commit in the graph, the commit (and its ancestors) will be added if it is not there
+     */
+    private static int position(String commitId) {
+        load();
+        int position = find(commitId);
+        if (position != NO_PARENT) {
+            return position;
+        }
+        // iterative, a long history must not overflow the stack
+        Deque<String> pending = new ArrayDeque<>();
+        Map<String, Commit> readCommits = new HashMap<>();
+        pending.push(commitId);
+        while (!pending.isEmpty()) {
+            String id = pending.peek();
+            if (find(id) != NO_PARENT) {
+                pending.pop();
+                continue;
+            }
+            Commit commit = readCommits.computeIfAbsent(id, CommitUtils::readCommit);
+            boolean parentsAdded = true;
+            for (String parentId : new String[]{commit.getSecondParentId(), commit.getParentId()}) {
+                if (parentId != null && find(parentId) == NO_PARENT) {
+                    pending.push(parentId);
+                    parentsAdded = false;
+                }
+            }
+            if (parentsAdded) {
+                pending.pop();
+                readCommits.remove(id);
+                append(id, commit);
+            }
+        }
+        return find(commitId);
+    }
+
+    private static void append(String commitId, Commit commit) {
+        int parent = commit.getParentId() == null ? NO_PARENT : find(commit.getParentId());
+        int secondParent = commit.getSecondParentId() == null ? NO_PARENT : find(commit.getSecondParentId());
+        long commitTime = commit.getCommitTime().getTime();
+        int generation = 1;
+        for (int p : new int[]{parent, secondParent}) {
+            if (p != NO_PARENT) {
+                generation = Math.max(generation, generations[p] + 1);
+            }
+        }
+        byte[] id = fromHex(commitId);
+        // the record is written before the count, so a broken write is never counted and will be overwritten
+        try (RandomAccessFile file = new RandomAccessFile(COMMIT_GRAPH_FILE, "rw")) {
+            if (file.length() < HEADER_LENGTH) {
+                file.writeInt(GRAPH_MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(0);
+            }
+            file.seek(HEADER_LENGTH + (long) count * RECORD_LENGTH);
+            file.write(id);
+            file.writeInt(parent);
+            file.writeInt(secondParent);
+            file.writeLong(commitTime);
+            file.writeInt(generation);
+            file.seek(8);
+            file.writeInt(count + 1);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write commit-graph");
+        }
+        graphFileStat = IndexUtils.FileStat.of(COMMIT_GRAPH_FILE);
+        addRecord(id, 0, parent, secondParent, commitTime, generation);
+        ChangedPathUtils.addFilter(count - 1, commit);
+    }
+
+    /**
+     * read the graph file once. a missing or unknown graph file is started again from nothing,
+     * its commits will be added back lazily.
+     */
+    private static void load() {
+        if (ids != null) {
+            return;
+        }
+        graphFileStat = IndexUtils.FileStat.of(COMMIT_GRAPH_FILE);
+        ByteBuffer graph = null;
+        if (COMMIT_GRAPH_FILE.exists()) {
+            try {
+                graph = ByteBuffer.wrap(Files.readAllBytes(COMMIT_GRAPH_FILE.toPath()));
+            } catch (IOException e) {
+                throw new RuntimeException("failed to read commit-graph");
+            }
+            if (graph.limit() < HEADER_LENGTH || graph.getInt(0) != GRAPH_MAGIC || graph.getInt(4) != VERSION) {
+                COMMIT_GRAPH_FILE.delete();
+                graph = null;
+            }
+        }
+        if (graph == null) {
+            ChangedPathUtils.delete(); // the positions of the filters are the positions of a graph which is gone
+        }
+        int records = graph == null ? 0 : Math.min(graph.getInt(8), (graph.limit() - HEADER_LENGTH) / RECORD_LENGTH);
+        count = 0;
+        allocate(Math.max(records, 16));
+        for (int i = 0; i < records; ++i) {
+            int offset = HEADER_LENGTH + i * RECORD_LENGTH + ID_LENGTH;
+            addRecord(graph.array(), offset - ID_LENGTH, graph.getInt(offset), graph.getInt(offset + 4),
+                    graph.getLong(offset + 8), graph.getInt(offset + 16));
+        }
+    }
+
+    private static void addRecord(byte[] id, int idOffset, int parent, int secondParent, long commitTime,
+                                  int generation) {
+        if (count == parents.length) {
+            allocate(count * 2);
+        }
+        System.arraycopy(id, idOffset, ids, count * ID_LENGTH, ID_LENGTH);
+        parents[count] = parent;
+        secondParents[count] = secondParent;
+        commitTimes[count] = commitTime;
+        generations[count] = generation;
+        count++;
+        if (count * 2 > table.length) {
+            rebuildTable(table.length * 2);
+        } else {
+            insert(count - 1);
+        }
+    }
+
+    /** make room for capacity records, the records read so far are kept */
+    private static void allocate(int capacity) {
+        ids = ids == null || count == 0 ? new byte[capacity * ID_LENGTH] : Arrays.copyOf(ids, capacity * ID_LENGTH);
+        parents = count == 0 ? new int[capacity] : Arrays.copyOf(parents, capacity);
+        secondParents = count == 0 ? new int[capacity] : Arrays.copyOf(secondParents, capacity);
+        commitTimes = count == 0 ? new long[capacity] : Arrays.copyOf(commitTimes, capacity);
+        generations = count == 0 ? new int[capacity] : Arrays.copyOf(generations, capacity);
+        if (count == 0) {
+            table = new int[Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2];
+        }
+    }
+
+    private static void rebuildTable(int length) {
+        table = new int[length];
+        for (int i = 0; i < count; ++i) {
+            insert(i);
+        }
+    }
+
+    private static void insert(int position) {
+        int mask = table.length - 1;
+        int slot = slotHash(ids, position * ID_LENGTH) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = position + 1;
+    }
+
+    /**
+     * @return position of the commit, NO_PARENT if it is not in the graph
+     */
+    private static int find(String commitId) {
+        byte[] id = fromHex(commitId);
+        int mask = table.length - 1;
+        for (int slot = slotHash(id, 0) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int position = table[slot] - 1;
+            if (Arrays.equals(ids, position * ID_LENGTH, (position + 1) * ID_LENGTH, id, 0, ID_LENGTH)) {
+                return position;
+            }
+        }
+        return NO_PARENT;
+    }
+
+    /** the bytes of an id are uniformly distributed, its first 4 bytes are a good hash */
+    private static int slotHash(byte[] id, int offset) {
+        return (id[offset] & 0xff) << 24 | (id[offset + 1] & 0xff) << 16 | (id[offset + 2] & 0xff) << 8
+                | (id[offset + 3] & 0xff);
+    }
+
+    private static String idAt(int position) {
+        return toHex(ids, position * ID_LENGTH, ID_LENGTH);
+    }
+}
@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 14:05
+ * @Description sorted index of all commit ids, so an abbreviated commit id is resolved by binary search
+ * instead of listing the commits and comparing every id.
+ * <p>
+ * commit-index layout: [magic][version][count][fan-out (256 ints)] then count sorted ids (20 bytes each).
+ * like git's pack idx, fan-out[b] is the number of ids whose first byte is at most b,
+ * so the ids starting with byte b are exactly the positions [fan-out[b - 1], fan-out[b]).
+ * <p>
+ * new commit ids are appended to commit-index-tail (unsorted, 20 bytes each), which is scanned linearly
+ * and merged into commit-index when it grows longer than MAX_TAIL_LENGTH.
+ * a repository without commit-index (e.g. created by an older version) gets one built from all commit ids.
+ * an index which misses commits written by an older version is built again when a lookup finds nothing and the
+ * commit-graph knows more commits than the index (see isStale()), not at every lookup which finds nothing.
+ */
+public class CommitIdIndexUtils {
+    private static final String INDEX_FILE_NAME = "commit-index";
+    private static final String TAIL_FILE_NAME = "commit-index-tail";
+
+    private static final int INDEX_MAGIC = 0x47434931; // "GCI1"
+    private static final int VERSION = 1;
+    private static final int FAN_OUT_LENGTH = 256;
+    private static final int HEADER_LENGTH = 12 + FAN_OUT_LENGTH * 4;
+    private static final int ID_LENGTH = 20;
+    /** the max number of ids in commit-index-tail before it is merged into commit-index */
+    private static final int MAX_TAIL_LENGTH = 256;
+    /** a prefix matches at most this many ids in a result, more are not needed to tell it is ambiguous */
+    private static final int MAX_MATCHES = 2;
+
+    /**
+     * result of resolving an abbreviated commit id
+     */
+    public static class PrefixMatch {
+        private final List<String> commitIds;
+
+        PrefixMatch(List<String> commitIds) {
+            this.commitIds = commitIds;
+        }
+
+        public boolean isFound() {
+            return commitIds.size() == 1;
+        }
+
+        public boolean isAmbiguous() {
+            return commitIds.size() > 1;
+        }
+
+        /**
+         * @return the only matched commit id, or null if nothing or more than one commit matches
+         */
+        public String getCommitId() {
+            return isFound() ? commitIds.get(0) : null;
+        }
+    }
+
+    /**
+     * record a new commit in the index of a repository (this one or a remote one).
+     * if the repository has no commit-index yet, nothing is done: it will be built from all commits later.
+     */
+    public static void addCommitId(File gitletDir, String commitId) {
+        File indexFile = join(gitletDir, INDEX_FILE_NAME);
+        File tailFile = join(gitletDir, TAIL_FILE_NAME);
+        if (!indexFile.exists()) {
+            return;
+        }
+        try {
+            Files.write(tailFile.toPath(), fromHex(commitId), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write commit index");
+        }
+        if (tailFile.length() / ID_LENGTH > MAX_TAIL_LENGTH) {
+            Set<String> commitIds = new TreeSet<>(readTail(tailFile));
+            try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+                MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int i = 0; i < index.getInt(8); ++i) {
+                    commitIds.add(idAt(index, i));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("failed to read commit index");
+            }
+            writeIndex(gitletDir, commitIds);
+        }
+    }
+
+    /**
+     * find the commits of this repository whose ids start with prefix.
+     * if nothing matches and the index is stale, it is built again from all commits and searched once more,
+     * because commits may be written by an older version which does not know the index.
+     */
+    public static PrefixMatch findByPrefix(String prefix) {
+        if (!prefix.matches("[0-9a-f]{1," + UID_LENGTH + "}")) {
+            return new PrefixMatch(new ArrayList<>());
+        }
+        File indexFile = join(GITLET_DIR, INDEX_FILE_NAME);
+        if (!indexFile.exists()) {
+            rebuildIndex();
+        }
+        List<String> matches = search(prefix);
+        if (matches.isEmpty() && isStale()) {
+            rebuildIndex();
+            matches = search(prefix);
+        }
+        return new PrefixMatch(matches);
+    }
+
+    /**
+     * @return at most MAX_MATCHES distinct ids which start with prefix, from commit-index and commit-index-tail
+     */
+    private static List<String> search(String prefix) {
+        Set<String> result = new TreeSet<>();
+        try (FileChannel channel = FileChannel.open(join(GITLET_DIR, INDEX_FILE_NAME).toPath())) {
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION) {
+                throw new RuntimeException("bad commit index");
+            }
+            // the smallest id with this prefix is the prefix padded with '0'
+            StringBuilder lowest = new StringBuilder(prefix);
+            while (lowest.length() < UID_LENGTH) {
+                lowest.append('0');
+            }
+            byte[] key = fromHex(lowest.toString());
+            int firstByte = key[0] & 0xff;
+            int low = firstByte == 0 ? 0 : index.getInt(12 + (firstByte - 1) * 4);
+            int high = index.getInt(8);
+            while (low < high) { // the first position whose id is not less than key
+                int mid = (low + high) >>> 1;
+                if (compareId(index, mid, key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < index.getInt(8) && result.size() < MAX_MATCHES; ++i) {
+                String commitId = idAt(index, i);
+                if (!commitId.startsWith(prefix)) {
+                    break;
+                }
+                result.add(commitId);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read commit index");
+        }
+        for (String commitId : readTail(join(GITLET_DIR, TAIL_FILE_NAME))) {
+            if (result.size() < MAX_MATCHES && commitId.startsWith(prefix)) {
+                result.add(commitId);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * a cheap check that the index misses some commits: the commit-graph has more commits than commit-index and
+     * commit-index-tail together. a commit written by an older version is added to the graph when it is used.
+     */
+    private static boolean isStale() {
+        File indexFile = join(GITLET_DIR, INDEX_FILE_NAME);
+        int indexed;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(indexFile.toPath())))) {
+            in.skipBytes(8);
+            indexed = in.readInt();
+        } catch (IOException e) {
+            return true;
+        }
+        long tailed = join(GITLET_DIR, TAIL_FILE_NAME).length() / ID_LENGTH;
+        return indexed + tailed < CommitGraphUtils.commitCount();
+    }
+
+    private static void rebuildIndex() {
+        writeIndex(GITLET_DIR, new TreeSet<>(CommitUtils.getAllCommitIds()));
+    }
+
+    /**
+     * write commit-index with these ids and remove commit-index-tail
+     * @param commitIds sorted ids
+     */
+    private static void writeIndex(File gitletDir, Set<String> commitIds) {
+        int[] fanOut = new int[FAN_OUT_LENGTH];
+        for (String commitId : commitIds) {
+            fanOut[Integer.parseInt(commitId.substring(0, 2), 16)]++;
+        }
+        for (int i = 1; i < FAN_OUT_LENGTH; ++i) {
+            fanOut[i] += fanOut[i - 1];
+        }
+        File tempFile = join(gitletDir, INDEX_FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(commitIds.size());
+            for (int count : fanOut) {
+                out.writeInt(count);
+            }
+            for (String commitId : commitIds) {
+                out.write(fromHex(commitId));
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to write commit index");
+        }
+        try {
+            Files.move(tempFile.toPath(), join(gitletDir, INDEX_FILE_NAME).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write commit index");
+        }
+        // ids left in the tail by a broken write are already in the new index, reading them again does no harm
+        join(gitletDir, TAIL_FILE_NAME).delete();
+    }
+
+    private static List<String> readTail(File tailFile) {
+        List<String> result = new ArrayList<>();
+        if (!tailFile.exists()) {
+            return result;
+        }
+        ByteBuffer tail = ByteBuffer.wrap(readContents(tailFile));
+        byte[] id = new byte[ID_LENGTH];
+        while (tail.remaining() >= ID_LENGTH) {
+            tail.get(id);
+            result.add(toHex(id));
+        }
+        return result;
+    }
+
+    private static int compareId(ByteBuffer index, int position, byte[] key) {
+        int offset = HEADER_LENGTH + position * ID_LENGTH;
+        for (int i = 0; i < ID_LENGTH; ++i) {
+            int cmp = Integer.compare(index.get(offset + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static String idAt(ByteBuffer index, int position) {
+        byte[] id = new byte[ID_LENGTH];
+        index.get(HEADER_LENGTH + position * ID_LENGTH, id);
+        return toHex(id);
+    }
+}
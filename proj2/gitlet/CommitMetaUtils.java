@@ -0,0 +1,472 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 20:40
+ * @Description metadata of every commit in a compact sidecar, and an index from messages and words to it,
+ * so find and global-log never read (deserialize) commits.
+ * <p>
+ * commit-meta layout: [magic][version] then one record per saved commit, in the order they are saved:
+ * [id (20 bytes)][parent id][second parent id][commit time (long)][message length (int)][message (utf-8)].
+ * a missing parent is 20 zero bytes.
+ * <p>
+ * message-index layout: [magic][version][count] then count entries [key (20 bytes)][offset (long)] sorted by key.
+ * offset is the position of a record in commit-meta. the key of a message is sha1("message\0" + message),
+ * the key of a word is sha1("word\0" + word in lower case), a record is indexed by its message and by every
+ * distinct word of it (a word is a run of letters and digits).
+ * <p>
+ * like commit-index (see CommitIdIndexUtils), new entries are appended to message-index-tail, which is scanned
+ * linearly and merged into message-index when it grows longer than MAX_TAIL_LENGTH.
+ * a repository without these files (e.g. created by an older version) gets them built from all commits.
+ */
+public class CommitMetaUtils {
+    private static final String META_FILE_NAME = "commit-meta";
+    private static final String INDEX_FILE_NAME = "message-index";
+    private static final String TAIL_FILE_NAME = "message-index-tail";
+
+    private static final int META_MAGIC = 0x47434d31; // "GCM1"
+    private static final int INDEX_MAGIC = 0x474d4931; // "GMI1"
+    private static final int VERSION = 1;
+    private static final int META_HEADER_LENGTH = 8;
+    private static final int INDEX_HEADER_LENGTH = 12;
+    private static final int ID_LENGTH = 20;
+    /** the fixed part of a record in commit-meta, before the message */
+    private static final int RECORD_HEADER_LENGTH = 3 * ID_LENGTH + 8 + 4;
+    private static final int ENTRY_LENGTH = ID_LENGTH + 8;
+    /** the max number of entries in message-index-tail before it is merged into message-index */
+    private static final int MAX_TAIL_LENGTH = 4096;
+
+    /**
+     * the fields of a commit printed by log, read from commit-meta
+     */
+    public static class CommitMeta {
+        public final String id;
+        public final String parentId;
+        public final String secondParentId;
+        public final long commitTime;
+        public final String message;
+
+        CommitMeta(String id, String parentId, String secondParentId, long commitTime, String message) {
+            this.id = id;
+            this.parentId = parentId;
+            this.secondParentId = secondParentId;
+            this.commitTime = commitTime;
+            this.message = message;
+        }
+
+        /**
+         * @return the same text as Commit.getCommitInfo()
+         */
+        public String getCommitInfo(SimpleDateFormat sdf) {
+            return Commit.formatCommitInfo(id, parentId, secondParentId, new Date(commitTime), message, sdf);
+        }
+    }
+
+    /**
+     * record a new commit in commit-meta and message-index of a repository (this one or a remote one).
+     * if the repository has no commit-meta yet, nothing is done: it will be built from all commits later.
+     */
+    public static void addCommit(File gitletDir, String commitId, Commit commit) {
+        File metaFile = join(gitletDir, META_FILE_NAME);
+        File indexFile = join(gitletDir, INDEX_FILE_NAME);
+        if (!metaFile.exists() || !indexFile.exists()) {
+            return;
+        }
+        long offset = metaFile.length();
+        try {
+            Files.write(metaFile.toPath(), recordBytes(commitId, commit), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write commit meta");
+        }
+        File tailFile = join(gitletDir, TAIL_FILE_NAME);
+        List<byte[]> keys = indexKeys(commit.getMessage());
+        ByteBuffer entries = ByteBuffer.allocate(keys.size() * ENTRY_LENGTH);
+        for (byte[] key : keys) {
+            entries.put(key).putLong(offset);
+        }
+        try {
+            Files.write(tailFile.toPath(), entries.array(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write message index");
+        }
+        if (tailFile.length() / ENTRY_LENGTH > MAX_TAIL_LENGTH) {
+            List<byte[]> mergedKeys = new ArrayList<>();
+            List<Long> mergedOffsets = new ArrayList<>();
+            readIndex(indexFile, mergedKeys, mergedOffsets);
+            readTail(tailFile, mergedKeys, mergedOffsets);
+            writeIndex(gitletDir, mergedKeys, mergedOffsets);
+        }
+    }
+
+    /**
+     * @return ids of the commits whose message is exactly message, sorted
+     */
+    public static List<String> findByMessage(String message) {
+        ensureIndex();
+        Set<String> result = new TreeSet<>();
+        for (CommitMeta meta : readRecords(lookup(messageKey(message)))) {
+            if (meta.message.equals(message)) {
+                result.add(meta.id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * find the commits whose message contains text.
+     * a word of text with a non-word character on both sides must be a whole word of such a message, so only
+     * the records indexed by all these words are read. text without such a word scans commit-meta.
+     * @return ids of the commits, sorted
+     */
+    public static List<String> findByText(String text) {
+        ensureIndex();
+        Set<Long> candidates = null;
+        for (String word : innerWords(text)) {
+            Set<Long> offsets = new HashSet<>(lookup(wordKey(word)));
+            if (candidates != null) {
+                offsets.retainAll(candidates);
+            }
+            candidates = offsets;
+        }
+        Set<String> result = new TreeSet<>();
+        if (candidates == null) {
+            forEachRecord(meta -> {
+                if (meta.message.contains(text)) {
+                    result.add(meta.id);
+                }
+            });
+            return new ArrayList<>(result);
+        }
+        List<Long> sortedCandidates = new ArrayList<>(candidates);
+        Collections.sort(sortedCandidates);
+        for (CommitMeta meta : readRecords(sortedCandidates)) {
+            if (meta.message.contains(text)) {
+                result.add(meta.id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * call action for every commit of this repository once, in the order they were saved
+     */
+    public static void forEachCommit(Consumer<CommitMeta> action) {
+        ensureIndex();
+        Set<String> seen = new HashSet<>();
+        forEachRecord(meta -> {
+            if (seen.add(meta.id)) {
+                action.accept(meta);
+            }
+        });
+    }
+
+    private static void forEachRecord(Consumer<CommitMeta> action) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(join(GITLET_DIR, META_FILE_NAME).toPath()), 64 * 1024))) {
+            if (in.readInt() != META_MAGIC || in.readInt() != VERSION) {
+                throw new RuntimeException("bad commit meta");
+            }
+            byte[] header = new byte[RECORD_HEADER_LENGTH];
+            while (true) {
+                try {
+                    in.readFully(header);
+                } catch (EOFException e) {
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(header);
+                byte[] message = new byte[buffer.getInt(RECORD_HEADER_LENGTH - 4)];
+                in.readFully(message);
+                action.accept(parseRecord(buffer, message));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read commit meta");
+        }
+    }
+
+    /**
+     * read the records at these offsets of commit-meta
+     */
+    private static List<CommitMeta> readRecords(List<Long> offsets) {
+        List<CommitMeta> result = new ArrayList<>();
+        if (offsets.isEmpty()) {
+            return result;
+        }
+        try (FileChannel channel = FileChannel.open(join(GITLET_DIR, META_FILE_NAME).toPath())) {
+            MappedByteBuffer meta = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (long offset : offsets) {
+                ByteBuffer header = meta.slice((int) offset, RECORD_HEADER_LENGTH);
+                byte[] message = new byte[header.getInt(RECORD_HEADER_LENGTH - 4)];
+                meta.get((int) offset + RECORD_HEADER_LENGTH, message);
+                result.add(parseRecord(header, message));
+            }
+        } catch (IOException | IndexOutOfBoundsException e) {
+            throw new RuntimeException("failed to read commit meta");
+        }
+        return result;
+    }
+
+    private static CommitMeta parseRecord(ByteBuffer header, byte[] message) {
+        byte[] id = new byte[ID_LENGTH];
+        header.get(0, id);
+        String commitId = bytesToId(id);
+        header.get(ID_LENGTH, id);
+        String parentId = bytesToId(id);
+        header.get(2 * ID_LENGTH, id);
+        String secondParentId = bytesToId(id);
+        return new CommitMeta(commitId, parentId, secondParentId, header.getLong(3 * ID_LENGTH),
+                new String(message, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return offsets of the records indexed by key, from message-index and message-index-tail
+     */
+    private static List<Long> lookup(byte[] key) {
+        List<Long> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(join(GITLET_DIR, INDEX_FILE_NAME).toPath())) {
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION) {
+                throw new RuntimeException("bad message index");
+            }
+            int count = index.getInt(8);
+            int low = 0;
+            int high = count;
+            while (low < high) { // the first position whose key is not less than key
+                int mid = (low + high) >>> 1;
+                if (compareKey(index, INDEX_HEADER_LENGTH + mid * ENTRY_LENGTH, key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < count; ++i) {
+                int position = INDEX_HEADER_LENGTH + i * ENTRY_LENGTH;
+                if (compareKey(index, position, key) != 0) {
+                    break;
+                }
+                result.add(index.getLong(position + ID_LENGTH));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read message index");
+        }
+        File tailFile = join(GITLET_DIR, TAIL_FILE_NAME);
+        if (tailFile.exists()) {
+            ByteBuffer tail = ByteBuffer.wrap(readContents(tailFile));
+            for (int position = 0; position + ENTRY_LENGTH <= tail.limit(); position += ENTRY_LENGTH) {
+                if (compareKey(tail, position, key) == 0) {
+                    result.add(tail.getLong(position + ID_LENGTH));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * build commit-meta and message-index from all commits if this repository does not have them
+     */
+    private static void ensureIndex() {
+        if (join(GITLET_DIR, META_FILE_NAME).exists() && join(GITLET_DIR, INDEX_FILE_NAME).exists()) {
+            return;
+        }
+        File tempFile = join(GITLET_DIR, META_FILE_NAME + ".tmp");
+        List<byte[]> keys = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            out.writeInt(META_MAGIC);
+            out.writeInt(VERSION);
+            long offset = META_HEADER_LENGTH;
+            for (String commitId : CommitUtils.getAllCommitIds()) {
+                Commit commit = CommitUtils.readCommit(commitId);
+                byte[] record = recordBytes(commitId, commit);
+                out.write(record);
+                for (byte[] key : indexKeys(commit.getMessage())) {
+                    keys.add(key);
+                    offsets.add(offset);
+                }
+                offset += record.length;
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to write commit meta");
+        }
+        try {
+            Files.move(tempFile.toPath(), join(GITLET_DIR, META_FILE_NAME).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write commit meta");
+        }
+        writeIndex(GITLET_DIR, keys, offsets);
+    }
+
+    /**
+     * write message-index with these entries and remove message-index-tail
+     * @param keys keys of the entries, in any order
+     * @param offsets offsets[i] is the offset of the record of keys[i]
+     */
+    private static void writeIndex(File gitletDir, List<byte[]> keys, List<Long> offsets) {
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Arrays.compareUnsigned(keys.get(a), keys.get(b));
+            return cmp != 0 ? cmp : Long.compare(offsets.get(a), offsets.get(b));
+        });
+        File tempFile = join(gitletDir, INDEX_FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order.length);
+            for (int i : order) {
+                out.write(keys.get(i));
+                out.writeLong(offsets.get(i));
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to write message index");
+        }
+        try {
+            Files.move(tempFile.toPath(), join(gitletDir, INDEX_FILE_NAME).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write message index");
+        }
+        join(gitletDir, TAIL_FILE_NAME).delete();
+    }
+
+    private static void readIndex(File indexFile, List<byte[]> keys, List<Long> offsets) {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int i = 0; i < index.getInt(8); ++i) {
+                int position = INDEX_HEADER_LENGTH + i * ENTRY_LENGTH;
+                byte[] key = new byte[ID_LENGTH];
+                index.get(position, key);
+                keys.add(key);
+                offsets.add(index.getLong(position + ID_LENGTH));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read message index");
+        }
+    }
+
+    private static void readTail(File tailFile, List<byte[]> keys, List<Long> offsets) {
+        ByteBuffer tail = ByteBuffer.wrap(readContents(tailFile));
+        for (int position = 0; position + ENTRY_LENGTH <= tail.limit(); position += ENTRY_LENGTH) {
+            byte[] key = new byte[ID_LENGTH];
+            tail.get(position, key);
+            keys.add(key);
+            offsets.add(tail.getLong(position + ID_LENGTH));
+        }
+    }
+
+    private static byte[] recordBytes(String commitId, Commit commit) {
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + message.length);
+        record.put(idToBytes(commitId));
+        record.put(idToBytes(commit.getParentId()));
+        record.put(idToBytes(commit.getSecondParentId()));
+        record.putLong(commit.getCommitTime().getTime());
+        record.putInt(message.length);
+        record.put(message);
+        return record.array();
+    }
+
+    /**
+     * @return the key of the message and the keys of its distinct words
+     */
+    private static List<byte[]> indexKeys(String message) {
+        List<byte[]> keys = new ArrayList<>();
+        keys.add(messageKey(message));
+        for (String word : new TreeSet<>(words(message))) {
+            keys.add(wordKey(word));
+        }
+        return keys;
+    }
+
+    private static byte[] messageKey(String message) {
+        return idToBytes(sha1("message\0", message));
+    }
+
+    private static byte[] wordKey(String word) {
+        return idToBytes(sha1("word\0", word));
+    }
+
+    /**
+     * @return the words of text in lower case, a word is a run of letters and digits
+     */
+    private static List<String> words(String text) {
+        List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); ++i) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the words of text which do not touch its ends. a message containing text has each of them
+     * as a whole word, the words at the ends may be only part of a word of the message.
+     */
+    private static List<String> innerWords(String text) {
+        List<String> result = words(text);
+        if (!result.isEmpty() && Character.isLetterOrDigit(text.charAt(text.length() - 1))) {
+            result.remove(result.size() - 1);
+        }
+        if (!result.isEmpty() && Character.isLetterOrDigit(text.charAt(0))) {
+            result.remove(0);
+        }
+        return result;
+    }
+
+    private static int compareKey(ByteBuffer buffer, int position, byte[] key) {
+        for (int i = 0; i < ID_LENGTH; ++i) {
+            int cmp = Integer.compare(buffer.get(position + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param id null is written as 20 zero bytes
+     */
+    private static byte[] idToBytes(String id) {
+        return id == null ? new byte[ID_LENGTH] : fromHex(id);
+    }
+
+    /**
+     * @return null for 20 zero bytes
+     */
+    private static String bytesToId(byte[] id) {
+        for (byte b : id) {
+            if (b != 0) {
+                return toHex(id);
+            }
+        }
+        return null;
+    }
+}
@@ -13,6 +13,16 @@ import static gitlet.Utils.*;
  * @Description class for manipulate Commit, which is a JavaBean
  */
 public class CommitUtils {
+    /** the max number of commits kept in commitCache */
+    private static final int COMMIT_CACHE_SIZE = 1024;
+    /** commit id --> commit, the least recently used commit is dropped when it is full */
+    private static final Map<String, Commit> commitCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+            return size() > COMMIT_CACHE_SIZE;
+        }
+    };
+
     /**
      * create an emptyCommit with no files -- version map
      * with no parent SHA-1 and no parent object(type also Commit) itself
@@ -57,71 +67,112 @@ public class CommitUtils {
     public static String saveCommit(Commit commit) {
         // note: we maybe use serialized string(byte[]) to calculate SHA-1 (not file)
         // because serialized object is string, which will be directly written to file.
-        String CommitId = getCommitId(commit); // byte[] will be regarded as an Object
-        File commitFile = join(COMMITS_DIR, CommitId);
-        writeObject(commitFile, commit); // store our first commit
-        return CommitId;
+        // the commit is stored compressed, but its id is still the sha-1 of the serialized bytes
+        // update: the files are written as trees first, the commit only keeps the id of the root tree
+        if (commit.getTreeId() == null) {
+            commit.setTreeId(TreeUtils.writeTree(commit.getFileVersionMap()));
+        }
+        String commitId = ObjectUtils.writeObject(COMMITS_DIR, PACKS_DIR, ObjectUtils.COMMIT, serializeCommit(commit));
+        commit.setId(commitId);
+        commitCache.put(commitId, commit);
+        CommitGraphUtils.addCommit(commitId, commit);
+        CommitIdIndexUtils.addCommitId(GITLET_DIR, commitId);
+        CommitMetaUtils.addCommit(GITLET_DIR, commitId, commit);
+        return commitId;
     }
 
+    /**
+     * the id is memoized in the commit, so a commit is serialized and hashed at most once
+     */
     public static String getCommitId(Commit commit) {
-        return sha1(serialize(commit));
+        if (commit.getId() == null) {
+            commit.setId(sha1(serializeCommit(commit)));
+        }
+        return commit.getId();
+    }
+
+    /**
+     * a HashMap writes its capacity when it is serialized, and a deserialized HashMap may get another capacity
+     * (e.g. fileVersionMap copied from indexMap), so the bytes are normalized by one round trip.
+     * then a commit read back from its file is serialized to the same bytes, and gets the same id.
+     */
+    private static byte[] serializeCommit(Commit commit) {
+        return serialize(deserialize(serialize(commit), Commit.class));
     }
 
     /***
      * restore the commit java bean from its CommitId
+     * packs are searched first, then the loose file in .gitlet/commits
      * @param commitId sha-1 of the commit
+     * @note the same commit bean is returned for the same id (until it drops out of commitCache),
+     * so change it only by its setters: a changed commit has no id, and will be read again next time.
      */
     public static Commit readCommit(String commitId) {
         if (commitId == null) {
             return null;
         }
-        return readObject(join(COMMITS_DIR, commitId), Commit.class);
+        Commit commit = commitCache.get(commitId);
+        if (commit != null && commitId.equals(commit.getId())) {
+            return commit;
+        }
+        byte[] serializedCommit = ObjectUtils.readObject(COMMITS_DIR, PACKS_DIR, ObjectUtils.COMMIT, commitId);
+        if (serializedCommit == null) {
+            throw new IllegalArgumentException("commit " + commitId + " does not exist");
+        }
+        commit = deserialize(serializedCommit, Commit.class);
+        commit.setId(commitId);
+        commitCache.put(commitId, commit);
+        return commit;
+    }
+
+    /***
+     * ids of all commits of this repository, both loose and packed
+     * @return commit id list with dictionary order
+     */
+    public static List<String> getAllCommitIds() {
+        Set<String> commitIds = new TreeSet<>(PackUtils.packedIds(PACKS_DIR, PackUtils.COMMIT_TYPE));
+        commitIds.addAll(ObjectUtils.looseIds(COMMITS_DIR));
+        return new ArrayList<>(commitIds);
     }
 
     /***
-     * find correct commit bean with prefix of SHA-1
+     * find the commit id with prefix of SHA-1, by binary search in the commit id index
      * @param prefix prefix sha-1 of the commit
-     * @warning this function as bugs, for example: prefix collisions
-     * @return if read failed, if no exception, it will return null
+     * @return the match result, it tells whether no commit, one commit or more than one commit (ambiguous) matches
      */
-    public static Commit readCommitByPrefix(String prefix) {
-        List<String> commitIdList = plainFilenamesIn(COMMITS_DIR);
-        if (commitIdList == null) {
-            return null;
-        }
-        int queryCount = 0;
-        String resultCommitId = null;
-        for (String commitId : commitIdList) {
-            if (commitId.startsWith(prefix)) {
-                queryCount++;
-                resultCommitId = commitId;
-            }
-        }
-        if (queryCount > 1) {
-            throw new RuntimeException("this prefix is ambiguous, you must use longer prefix");
-        }
-        return readCommit(resultCommitId);
+    public static CommitIdIndexUtils.PrefixMatch findCommitIdByPrefix(String prefix) {
+        return CommitIdIndexUtils.findByPrefix(prefix);
     }
 
     /***
      * compare the old commit map and new map, and create new objects in new map
      * note: directly save file from work directory is not safe, for user may change the content of the file in work directory
-     * instead, we should save the file in memory, and save them to disk, to keep (sha1 <-- right content)
+     * instead, we should save the file in the staging area at add time, to keep (sha1 <-- right content)
+     * update: the staged blobs are on disk already, creating an object is just moving it out of the staging area
      */
-    public static void createFileObjects(Commit oldCommit, Commit newCommit, HashMap<String, String> stagedFiles) {
+    public static void createFileObjects(Commit oldCommit, Commit newCommit) {
         HashMap<String, String> oldFileVersion = oldCommit.getFileVersionMap();
         HashMap<String, String> newFileVersion = newCommit.getFileVersionMap();
         for (String fileName : newFileVersion.keySet()) {
-            if (oldFileVersion.containsKey(fileName)) {
-                if (!oldFileVersion.get(fileName).equals(newFileVersion.get(fileName))) {
-                    FileUtils.writeGitletObjectsFile(stagedFiles.get(newFileVersion.get(fileName)));
-                }
-            } else  {
-                FileUtils.writeGitletObjectsFile(stagedFiles.get(newFileVersion.get(fileName)));
+            String fileSHA1 = newFileVersion.get(fileName);
+            if (!fileSHA1.equals(oldFileVersion.get(fileName))) {
+                IndexUtils.commitStagedFile(fileSHA1);
             }
         }
     }
 
+    /**
+     * compare the files of two commits. for commits with trees, subtrees which are the same in both are skipped
+     * by their ids, so the cost depends on what differs, not on the number of files.
+     * @return file name --> change, only for the files which differ
+     */
+    public static TreeMap<String, TreeUtils.Change> diffCommits(Commit oldCommit, Commit newCommit) {
+        if (oldCommit.getTreeId() != null && newCommit.getTreeId() != null) {
+            return TreeUtils.diff(oldCommit.getTreeId(), newCommit.getTreeId());
+        }
+        return TreeUtils.diff(oldCommit.getFileVersionMap(), newCommit.getFileVersionMap());
+    }
+
     public static boolean isTrackedByCommit(String commitId, String fileName) {
         Commit commit = readCommit(commitId);
         return isTrackedByCommit(commit, fileName);
@@ -139,53 +190,38 @@ public class CommitUtils {
 
     /**
      * trace back to the initial commit, include currentCommit
+     * @note the chain is walked in the commit-graph, only the returned commits are read
      */
-    public static List<Commit> commitTraceBack(Commit currentCommit) {
+    public static List<Commit> commitTraceBack(String currentCommitId) {
         List<Commit> commitList = new LinkedList<>();
-        Commit commitPtr = currentCommit;
-        while (commitPtr != null) {
-            commitList.add(commitPtr);
-            commitPtr = readCommit(commitPtr.getParentId());
+        for (String commitId : commitIdTraceBack(currentCommitId)) {
+            commitList.add(readCommit(commitId));
         }
         return commitList;
     }
 
     /**
      * trace back to the initial commit, include currentCommit
-     * @note the difference is this function will return commit ids.
+     * @note the difference is this function will return commit ids, and it never reads a commit.
      */
-    public static List<String> commitIdTraceBack(Commit currentCommit) {
-        List<String> commitList = new LinkedList<>();
-        Commit commitPtr = currentCommit;
-        while (commitPtr != null) {
-            commitList.add(getCommitId(commitPtr));
-            commitPtr = readCommit(commitPtr.getParentId());
-        }
-        return commitList;
+    public static List<String> commitIdTraceBack(String currentCommitId) {
+        return CommitGraphUtils.firstParentChain(currentCommitId);
     }
 
     /**
-     * get all ancestors of this commit. include this commit itself
-     * @param visitedSet should be an empty set.
-     * @return list of commit id (string)
+     * trace back to the initial commit lazily, include currentCommit
+     * @return commit ids, a commit is never read. see CommitGraphUtils.firstParentIterator()
      */
-    public static List<String> commitAncestors(Commit commit, Set<String> visitedSet) {
-        String parentId = commit.getParentId();
-        String secondParentId = commit.getSecondParentId();
-        visitedSet.add(getCommitId(commit));
-        List<String> result = new LinkedList<>();
-        result.add(getCommitId(commit));
-        if (parentId != null && !visited(visitedSet, parentId)) {
-            result.addAll(commitAncestors(readCommit(parentId), visitedSet));
-        }
-        if (secondParentId != null && !visited(visitedSet, secondParentId)) {
-            result.addAll(commitAncestors(readCommit(secondParentId), visitedSet));
-        }
-        return result;
+    public static Iterator<String> commitIdIterator(String currentCommitId) {
+        return CommitGraphUtils.firstParentIterator(currentCommitId);
     }
 
-    private static boolean visited(Set<String> visitedSet, String commitId) {
-        return visitedSet.contains(commitId);
+    /**
+     * get all ancestors of this commit. include this commit itself
+     * @return list of commit id (string), see CommitGraphUtils.ancestors() for the order
+     */
+    public static List<String> commitAncestors(String commitId) {
+        return CommitGraphUtils.ancestors(commitId);
     }
 
     /**
@@ -195,17 +231,15 @@ public class CommitUtils {
     public static Commit getSplitCommit(String branchName1, String branchName2) {
         String branch1CommitId = BranchUtils.getCommitId(branchName1);
         String branch2CommitId = BranchUtils.getCommitId(branchName2);
-        Commit commit1 = readCommit(branch1CommitId);
-        Commit commit2 = readCommit(branch2CommitId);
-        List<Commit> branch1Traced = commitTraceBack(commit1);
-        List<Commit> branch2Traced = commitTraceBack(commit2);
+        List<String> branch1Traced = commitIdTraceBack(branch1CommitId);
+        List<String> branch2Traced = commitIdTraceBack(branch2CommitId);
         Collections.reverse(branch1Traced); // bug : the list should be  old commit --> new commit !
         Collections.reverse(branch2Traced);
         int minLength = Math.min(branch1Traced.size(), branch2Traced.size());
         for (int i = 0; i < minLength; ++i) {
             // the front commit of the first different commit is the split point
-            if (!isSameCommit(branch1Traced.get(i), branch2Traced.get(i))) {
-                return branch1Traced.get(i - 1);
+            if (!branch1Traced.get(i).equals(branch2Traced.get(i))) {
+                return readCommit(branch1Traced.get(i - 1));
             }
         }
         // if the two list has same length and has same commit list, then return null
@@ -213,59 +247,22 @@ public class CommitUtils {
             return null;
         }
         // in minLength range, the two list has same commit, then the end elem of shorter list will be return
-        return branch1Traced.size() < branch2Traced.size() ?
-                branch1Traced.get(branch1Traced.size() - 1) : branch2Traced.get(branch1Traced.size() - 1);
+        return readCommit(branch1Traced.size() < branch2Traced.size() ?
+                branch1Traced.get(branch1Traced.size() - 1) : branch2Traced.get(branch1Traced.size() - 1));
     }
 
 
     /**
      * get the split point of two branches
      * @return if the two list has same length and has same commit list, then return null
+     * update: the common ancestors are no longer collected. the split point is found by walking both branches
+     * down the commit-graph together until they meet (see CommitGraphUtils.mergeBase()), only the split point is read
      */
     public static Commit getSplitCommitWithGraph(String branchName1, String branchName2) {
         String branch1CommitId = BranchUtils.getCommitId(branchName1);
         String branch2CommitId = BranchUtils.getCommitId(branchName2);
-        Commit commit1 = readCommit(branch1CommitId);
-        Commit commit2 = readCommit(branch2CommitId);
-        List<String> branch1AncestorsId = commitAncestors(commit1, new HashSet<>());
-        List<String> branch2AncestorsId = commitAncestors(commit2, new HashSet<>());
-        List<String> commonAncestors = new LinkedList<>();
-        for (String commitId : branch1AncestorsId) {
-            if (branch2AncestorsId.contains(commitId)) {
-                commonAncestors.add(commitId);
-            }
-        }
-        Map<String, Integer> inDegreeOfAncestors = inDegreeOfNodes(commonAncestors);
-        for (String commitId : inDegreeOfAncestors.keySet()) {
-            if (inDegreeOfAncestors.get(commitId) == 0) {
-                return CommitUtils.readCommit(commitId);
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Calculate the in degree for each node in common ancestors.
-     * can be calculated by where those commit points to (out degree)
-     * @return map: commit id --> in degree
-     */
-    private static Map<String, Integer> inDegreeOfNodes(List<String> commitIds) {
-        Map<String, Integer> statisticResult = new HashMap<>();
-        for (String commitId : commitIds) {
-            statisticResult.put(commitId, 0);
-        }
-        for (String commitId : commitIds) {
-            Commit commit = CommitUtils.readCommit(commitId);
-            String parentId = commit.getParentId();
-            String secondParentId = commit.getSecondParentId();
-            if (parentId != null) {
-                statisticResult.put(parentId, statisticResult.get(parentId) + 1);
-            }
-            if (secondParentId != null) {
-                statisticResult.put(secondParentId, statisticResult.get(secondParentId) + 1);
-            }
-        }
-        return statisticResult;
+        String splitCommitId = CommitGraphUtils.mergeBase(branch1CommitId, branch2CommitId);
+        return splitCommitId == null ? null : readCommit(splitCommitId);
     }
 
     /**
@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 19:05
+ * @Description binary deltas, like the deltas in git's packs. a delta rebuilds the target bytes from a base
+ * with two kinds of instructions: copy a range of the base, or insert literal bytes.
+ * <p>
+ * delta layout: [base length][target length] (both as varints) then instructions:
+ * insert: [n (1~127)][n literal bytes]
+ * copy:   [1oooosss] then the offset bytes and size bytes whose bits are set (little-endian),
+ *         up to 4 bytes of offset and 3 bytes of size, a missing byte is 0.
+ * <p>
+ * matches are found by indexing the base in blocks of BLOCK_SIZE bytes and looking up a rolling hash
+ * of every BLOCK_SIZE bytes of the target, so creating a delta is linear in the size of the two inputs.
+ */
+public class DeltaUtils {
+    private static final int BLOCK_SIZE = 16;
+    private static final int MAX_INSERT = 127;
+    private static final int MAX_COPY = 0xffffff;
+    /** the max number of candidates of one hash which are compared */
+    private static final int MAX_CHAIN = 64;
+    private static final int HASH_BASE = 257;
+
+    /**
+     * @param maxSize the delta is given up as soon as it is this long
+     * @return the delta which rebuilds target from base, or null if it is not shorter than maxSize
+     */
+    public static byte[] createDelta(byte[] base, byte[] target, int maxSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        // index: hash of a block --> positions of blocks in base, newest first
+        int blocks = base.length / BLOCK_SIZE;
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(blocks * 2, 16) - 1);
+        int[] heads = new int[1 << bits];
+        int[] next = new int[blocks];
+        for (int i = 0; i < blocks; ++i) {
+            int bucket = bucket(hash(base, i * BLOCK_SIZE), bits);
+            next[i] = heads[bucket] - 1;
+            heads[bucket] = i + 1; // 0 means empty
+        }
+        int power = 1;
+        for (int i = 0; i < BLOCK_SIZE - 1; ++i) {
+            power *= HASH_BASE;
+        }
+        int insertStart = 0;
+        int position = 0;
+        int hash = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+        while (position + BLOCK_SIZE <= target.length) {
+            int bestOffset = -1;
+            int bestLength = 0;
+            int chain = 0;
+            for (int block = heads[bucket(hash, bits)] - 1; block >= 0 && chain < MAX_CHAIN;
+                 block = next[block], ++chain) {
+                int offset = block * BLOCK_SIZE;
+                int length = matchLength(base, offset, target, position);
+                if (length > bestLength) {
+                    bestOffset = offset;
+                    bestLength = length;
+                }
+            }
+            if (bestLength < BLOCK_SIZE) {
+                if (position + BLOCK_SIZE < target.length) {
+                    hash = (hash - target[position] * power) * HASH_BASE + target[position + BLOCK_SIZE];
+                }
+                position++;
+                continue;
+            }
+            // the match may start before the block, take bytes back from the pending insert
+            while (position > insertStart && bestOffset > 0 && bestLength < MAX_COPY
+                    && base[bestOffset - 1] == target[position - 1]) {
+                position--;
+                bestOffset--;
+                bestLength++;
+            }
+            writeInsert(out, target, insertStart, position);
+            writeCopy(out, bestOffset, bestLength);
+            if (out.size() >= maxSize) {
+                return null;
+            }
+            position += bestLength;
+            insertStart = position;
+            if (position + BLOCK_SIZE <= target.length) {
+                hash = hash(target, position);
+            }
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.size() < maxSize ? out.toByteArray() : null;
+    }
+
+    /**
+     * @return the target bytes rebuilt from base
+     */
+    public static byte[] applyDelta(byte[] base, byte[] delta) {
+        int[] position = {0};
+        if (readVarint(delta, position) != base.length) {
+            throw new IllegalArgumentException("delta does not match its base");
+        }
+        byte[] result = new byte[readVarint(delta, position)];
+        int length = 0;
+        int p = position[0];
+        while (p < delta.length) {
+            int op = delta[p++] & 0xff;
+            if ((op & 0x80) == 0) {
+                System.arraycopy(delta, p, result, length, op);
+                p += op;
+                length += op;
+                continue;
+            }
+            int offset = 0;
+            int size = 0;
+            for (int i = 0; i < 4; ++i) {
+                if ((op & (1 << i)) != 0) {
+                    offset |= (delta[p++] & 0xff) << (8 * i);
+                }
+            }
+            for (int i = 0; i < 3; ++i) {
+                if ((op & (0x10 << i)) != 0) {
+                    size |= (delta[p++] & 0xff) << (8 * i);
+                }
+            }
+            System.arraycopy(base, offset, result, length, size);
+            length += size;
+        }
+        if (length != result.length) {
+            throw new IllegalArgumentException("delta is broken");
+        }
+        return result;
+    }
+
+    private static int matchLength(byte[] base, int offset, byte[] target, int position) {
+        int max = Math.min(MAX_COPY, Math.min(base.length - offset, target.length - position));
+        int length = 0;
+        while (length < max && base[offset + length] == target[position + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    private static void writeCopy(ByteArrayOutputStream out, int offset, int size) {
+        int op = 0x80;
+        ByteArrayOutputStream args = new ByteArrayOutputStream(7);
+        for (int i = 0; i < 4; ++i) {
+            int b = (offset >>> (8 * i)) & 0xff;
+            if (b != 0) {
+                op |= 1 << i;
+                args.write(b);
+            }
+        }
+        for (int i = 0; i < 3; ++i) {
+            int b = (size >>> (8 * i)) & 0xff;
+            if (b != 0) {
+                op |= 0x10 << i;
+                args.write(b);
+            }
+        }
+        out.write(op);
+        out.writeBytes(args.toByteArray());
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = bytes[position[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int hash(byte[] bytes, int from) {
+        int hash = 0;
+        for (int i = from; i < from + BLOCK_SIZE; ++i) {
+            hash = hash * HASH_BASE + bytes[i];
+        }
+        return hash;
+    }
+
+    private static int bucket(int hash, int bits) {
+        return (hash * 0x9e3779b1) >>> (32 - bits);
+    }
+}
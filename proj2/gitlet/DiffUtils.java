@@ -0,0 +1,477 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 19:40
+ * @Description the line diff engine and the diff command.
+ * every distinct line of the two files gets an int id (see Lines), then Myers' algorithm finds the shortest edit
+ * script between the two id arrays in linear space: the middle of an optimal path is found by searching from
+ * both ends at once, and the two halves are compared recursively. a common prefix and suffix are cut off first.
+ * <p>
+ * the differing regions are given to an EditHandler in order, as soon as they are found, so the whole edit script
+ * is never held in memory. the unified diff printer only keeps the regions of the hunk being printed.
+ * merge and blame can use diff() with their own EditHandler.
+ */
+public class DiffUtils {
+    /** lines of context around a change in the unified diff */
+    private static final int CONTEXT = 3;
+    /**
+     * when the search for the middle of a path takes more steps than this, the furthest point reached is taken
+     * instead, like GNU diff does. the diff may not be the shortest then, but huge files with many changes
+     * are not compared in quadratic time.
+     */
+    private static final int MAX_COST = 4096;
+    /** a file with a zero byte in its first bytes is binary, like git does */
+    private static final int BINARY_CHECK_LENGTH = 8000;
+
+    /**
+     * receives the regions which differ, in order: lines [oldStart, oldEnd) of the old file are replaced by
+     * lines [newStart, newEnd) of the new file. the lines between two regions are the same in both files.
+     */
+    public interface EditHandler {
+        void edit(int oldStart, int oldEnd, int newStart, int newEnd);
+    }
+
+    /**
+     * the lines of a file. a line includes its '\n', so a last line without '\n' differs from the same line with it
+     */
+    public static class Lines {
+        final byte[] content;
+        /** line i is content[starts[i], starts[i + 1]) */
+        final int[] starts;
+        /** id of every line, two lines (of the files split together) are the same if and only if their ids are */
+        public final int[] ids;
+
+        private Lines(byte[] content, int[] starts, int[] ids) {
+            this.content = content;
+            this.starts = starts;
+            this.ids = ids;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        /** @return line i, with its '\n' */
+        public String line(int i) {
+            return new String(content, starts[i], starts[i + 1] - starts[i], StandardCharsets.UTF_8);
+        }
+
+        boolean endsWithNewline(int i) {
+            return content[starts[i + 1] - 1] == '\n';
+        }
+    }
+
+    /**
+     * split files into lines, the ids are given by one table, so they can be compared between the files
+     * @param contents null for a file which does not exist (no lines)
+     */
+    public static Lines[] splitLines(byte[]... contents) {
+        Map<String, Integer> lineIds = new HashMap<>();
+        Lines[] result = new Lines[contents.length];
+        for (int f = 0; f < contents.length; ++f) {
+            byte[] content = contents[f] == null ? new byte[0] : contents[f];
+            List<Integer> starts = new ArrayList<>();
+            for (int i = 0; i < content.length; ++i) {
+                if (i == 0 || content[i - 1] == '\n') {
+                    starts.add(i);
+                }
+            }
+            int[] lineStarts = new int[starts.size() + 1];
+            int[] ids = new int[starts.size()];
+            for (int i = 0; i < ids.length; ++i) {
+                lineStarts[i] = starts.get(i);
+            }
+            lineStarts[ids.length] = content.length;
+            for (int i = 0; i < ids.length; ++i) {
+                // ISO-8859-1 maps every byte to one char, so the key is exactly the bytes of the line
+                String line = new String(content, lineStarts[i], lineStarts[i + 1] - lineStarts[i],
+                        StandardCharsets.ISO_8859_1);
+                ids[i] = lineIds.computeIfAbsent(line, key -> lineIds.size());
+            }
+            result[f] = new Lines(content, lineStarts, ids);
+        }
+        return result;
+    }
+
+    /**
+     * compare two id arrays, the regions which differ are given to handler in order, adjacent regions are joined
+     */
+    public static void diff(int[] a, int[] b, EditHandler handler) {
+        JoiningHandler joining = new JoiningHandler(handler);
+        compare(a, 0, a.length, b, 0, b.length, joining);
+        joining.finish();
+    }
+
+    private static void compare(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, EditHandler handler) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                handler.edit(aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+        int[] split = split(a, aLo, aHi, b, bLo, bHi);
+        if (split == null) { // nothing in common
+            handler.edit(aLo, aHi, bLo, bHi);
+            return;
+        }
+        compare(a, aLo, split[0], b, bLo, split[1], handler);
+        compare(a, split[0], aHi, b, split[1], bHi, handler);
+    }
+
+    /**
+     * find a point on a shortest edit path by searching forward from the start and backward from the end
+     * until the two searches meet (Myers' middle snake)
+     * @return {x, y}, the path goes through a[x] and b[y], or null if a and b have no line in common
+     */
+    private static int[] split(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int[] forward = new int[2 * maxD + 2];
+        int[] backward = new int[2 * maxD + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        // diagonals which left the box are not searched again
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+        int bestX = 0;
+        int bestY = 0;
+        for (int d = 0; d < maxD; ++d) {
+            if (d > MAX_COST && bestX + bestY > 0) {
+                return new int[]{aLo + bestX, bLo + bestY};
+            }
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else {
+                    if (x + y > bestX + bestY && x + y < n + m) {
+                        bestX = x;
+                        bestY = y;
+                    }
+                    int backwardIndex = offset + delta - k;
+                    if (odd && backwardIndex >= 0 && backwardIndex < backward.length
+                            && backward[backwardIndex] != -1 && x >= n - backward[backwardIndex]) {
+                        return new int[]{aLo + x, bLo + y};
+                    }
+                }
+            }
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else {
+                    int forwardIndex = offset + delta - k;
+                    if (!odd && forwardIndex >= 0 && forwardIndex < forward.length
+                            && forward[forwardIndex] != -1 && forward[forwardIndex] >= n - x) {
+                        int forwardX = forward[forwardIndex];
+                        return new int[]{aLo + forwardX, bLo + forwardX - (delta - k)};
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** joins regions which touch each other, so every region given to the handler is followed by common lines */
+    private static class JoiningHandler implements EditHandler {
+        private final EditHandler handler;
+        private int[] pending;
+
+        JoiningHandler(EditHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void edit(int oldStart, int oldEnd, int newStart, int newEnd) {
+            if (pending != null && pending[1] == oldStart && pending[3] == newStart) {
+                pending[1] = oldEnd;
+                pending[3] = newEnd;
+                return;
+            }
+            finish();
+            pending = new int[]{oldStart, oldEnd, newStart, newEnd};
+        }
+
+        void finish() {
+            if (pending != null) {
+                handler.edit(pending[0], pending[1], pending[2], pending[3]);
+                pending = null;
+            }
+        }
+    }
+
+    /** prints regions as unified diff hunks, a hunk is printed when the next region is too far away from it */
+    private static class HunkPrinter implements EditHandler {
+        private final OutputStream out;
+        private final Lines oldLines;
+        private final Lines newLines;
+        /** the regions of the hunk not printed yet */
+        private final List<int[]> hunk = new ArrayList<>();
+
+        HunkPrinter(OutputStream out, Lines oldLines, Lines newLines) {
+            this.out = out;
+            this.oldLines = oldLines;
+            this.newLines = newLines;
+        }
+
+        @Override
+        public void edit(int oldStart, int oldEnd, int newStart, int newEnd) {
+            if (!hunk.isEmpty() && oldStart - hunk.get(hunk.size() - 1)[1] > 2 * CONTEXT) {
+                finish();
+            }
+            hunk.add(new int[]{oldStart, oldEnd, newStart, newEnd});
+        }
+
+        void finish() {
+            if (hunk.isEmpty()) {
+                return;
+            }
+            int[] first = hunk.get(0);
+            int[] last = hunk.get(hunk.size() - 1);
+            int oldFrom = Math.max(0, first[0] - CONTEXT);
+            int oldTo = Math.min(oldLines.size(), last[1] + CONTEXT);
+            int newFrom = first[2] - (first[0] - oldFrom);
+            int newTo = last[3] + (oldTo - last[1]);
+            write("@@ -" + range(oldFrom, oldTo - oldFrom) + " +" + range(newFrom, newTo - newFrom) + " @@\n");
+            int position = oldFrom;
+            for (int[] region : hunk) {
+                writeLines(' ', oldLines, position, region[0]);
+                writeLines('-', oldLines, region[0], region[1]);
+                writeLines('+', newLines, region[2], region[3]);
+                position = region[1];
+            }
+            writeLines(' ', oldLines, position, oldTo);
+            hunk.clear();
+        }
+
+        private void writeLines(char prefix, Lines lines, int from, int to) {
+            try {
+                for (int i = from; i < to; ++i) {
+                    out.write(prefix);
+                    out.write(lines.content, lines.starts[i], lines.starts[i + 1] - lines.starts[i]);
+                    if (!lines.endsWithNewline(i)) {
+                        out.write("\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("failed to write diff");
+            }
+        }
+
+        private void write(String text) {
+            try {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new RuntimeException("failed to write diff");
+            }
+        }
+
+        /** "start,count" with 1-based start, like diff -u. an empty range starts at the line before it */
+        private static String range(int start, int count) {
+            if (count == 1) {
+                return String.valueOf(start + 1);
+            }
+            return (count == 0 ? start : start + 1) + "," + count;
+        }
+    }
+
+    /**
+     * print the unified diff of one file
+     * @param oldContent null if the file does not exist in the old version
+     * @param newContent null if the file does not exist in the new version
+     */
+    public static void writeFileDiff(OutputStream out, String fileName, byte[] oldContent, byte[] newContent)
+            throws IOException {
+        out.write(("diff --git a/" + fileName + " b/" + fileName + "\n").getBytes(StandardCharsets.UTF_8));
+        if (isBinary(oldContent) || isBinary(newContent)) {
+            out.write(("Binary files " + (oldContent == null ? "/dev/null" : "a/" + fileName) + " and "
+                    + (newContent == null ? "/dev/null" : "b/" + fileName) + " differ\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        out.write(("--- " + (oldContent == null ? "/dev/null" : "a/" + fileName) + "\n"
+                + "+++ " + (newContent == null ? "/dev/null" : "b/" + fileName) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Lines[] lines = splitLines(oldContent, newContent);
+        HunkPrinter printer = new HunkPrinter(out, lines[0], lines[1]);
+        diff(lines[0].ids, lines[1].ids, printer);
+        printer.finish();
+    }
+
+    static boolean isBinary(byte[] content) {
+        if (content == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(content.length, BINARY_CHECK_LENGTH); ++i) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * diff [commit [commit]] [-- file...], a commit is an (abbreviated) id or a branch name.
+     * no commit: changes in CWD which are not staged (CWD against the index).
+     * one commit: CWD against the commit. two commits: the first commit against the second.
+     * only tracked files (in the index or in the commit) are compared, untracked files are never shown.
+     * the files after "--" limit the output to these files, or to the files under these directories.
+     */
+    public static void diff(String... args) {
+        int separator = Arrays.asList(args).indexOf("--");
+        int commitCount = separator < 0 ? args.length : separator;
+        if (commitCount > 2) {
+            System.out.println(INCORRECT_OPERANDS_WARNING);
+            return;
+        }
+        List<String> paths = new ArrayList<>();
+        if (separator >= 0) {
+            for (int i = separator + 1; i < args.length; ++i) {
+                String path = FileUtils.toCWDFileName(args[i]);
+                paths.add(path == null ? args[i] : path);
+            }
+        }
+        Commit[] commits = new Commit[commitCount];
+        for (int i = 0; i < commitCount; ++i) {
+            // a branch name stands for the commit of the branch
+            commits[i] = BranchUtils.branchExists(args[i]) ? CommitUtils.readCommit(BranchUtils.getCommitId(args[i]))
+                    : Repository.readCommitByPrefix(args[i]);
+            if (commits[i] == null) {
+                return;
+            }
+        }
+        TreeMap<String, TreeUtils.Change> changes = commitCount == 2
+                ? CommitUtils.diffCommits(commits[0], commits[1])
+                : workingTreeChanges(commitCount == 0 ? IndexUtils.indexMap : commits[0].getFileVersionMap(), paths);
+        OutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+        try {
+            for (Map.Entry<String, TreeUtils.Change> entry : changes.entrySet()) {
+                String fileName = entry.getKey();
+                if (!paths.isEmpty() && !isUnder(fileName, paths)) {
+                    continue;
+                }
+                TreeUtils.Change change = entry.getValue();
+                byte[] newContent;
+                if (commitCount == 2) {
+                    newContent = readBlob(change.newVersion);
+                } else {
+                    newContent = change.newVersion == null ? null : Files.readAllBytes(join(CWD, fileName).toPath());
+                }
+                writeFileDiff(out, fileName, readBlob(change.oldVersion), newContent);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write diff");
+        }
+        // files hashed here are recorded with their stat data, like status
+        IndexUtils.saveIndex();
+    }
+
+    /**
+     * @param oldFiles file name --> version to compare CWD with
+     * @return the tracked files whose content in CWD differs from oldFiles, the new version is the sha1 of the file
+     * in CWD, or null if it is deleted from CWD
+     */
+    private static TreeMap<String, TreeUtils.Change> workingTreeChanges(Map<String, String> oldFiles,
+                                                                     List<String> paths) {
+        Set<String> trackedFiles = new TreeSet<>(oldFiles.keySet());
+        trackedFiles.addAll(IndexUtils.indexMap.keySet());
+        TreeMap<String, TreeUtils.Change> result = new TreeMap<>();
+        for (String fileName : trackedFiles) {
+            if (!paths.isEmpty() && !isUnder(fileName, paths)) {
+                continue;
+            }
+            String oldVersion = oldFiles.get(fileName);
+            File file = join(CWD, fileName);
+            if (!file.isFile()) {
+                if (oldVersion != null) {
+                    result.put(fileName, new TreeUtils.Change(oldVersion, null));
+                }
+                continue;
+            }
+            String newVersion = IndexUtils.getCachedSHA1(fileName);
+            if (newVersion == null) {
+                // stat before hashing, so a change during hashing will never be cached
+                IndexUtils.FileStat stat = IndexUtils.FileStat.of(file);
+                newVersion = FileUtils.getFileContentSHA1(fileName);
+                IndexUtils.refreshStat(fileName, stat, newVersion);
+            }
+            if (!newVersion.equals(oldVersion)) {
+                result.put(fileName, new TreeUtils.Change(oldVersion, newVersion));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isUnder(String fileName, List<String> paths) {
+        for (String path : paths) {
+            if (path.isEmpty() || fileName.equals(path) || fileName.startsWith(path + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the content of a committed or staged blob, null for null
+     */
+    private static byte[] readBlob(String version) {
+        if (version == null) {
+            return null;
+        }
+        byte[] content = ObjectUtils.readObject(OBJECTS_DIR, PACKS_DIR, ObjectUtils.BLOB, version);
+        if (content == null) {
+            content = ObjectUtils.readObject(STAGING_DIR, PACKS_DIR, ObjectUtils.BLOB, version);
+        }
+        if (content == null) {
+            throw new IllegalArgumentException("object " + version + " does not exist");
+        }
+        return content;
+    }
+}
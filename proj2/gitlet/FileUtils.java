@@ -1,7 +1,13 @@
 package gitlet;
 
-import java.util.HashMap;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.GitletConstants.*;
 import static gitlet.Utils.*;
@@ -12,19 +18,45 @@ import static gitlet.Utils.*;
  * @Description
  */
 public class FileUtils {
+    /** the max number of threads which write files to CWD at the same time, -Dgitlet.writers=N changes it */
+    private static final int MAX_WRITERS = Integer.getInteger("gitlet.writers",
+            Math.max(2, Math.min(16, Runtime.getRuntime().availableProcessors() * 2)));
+    /** fewer files than this are written in the main thread, a pool costs more than it saves */
+    private static final int MIN_WRITES_TO_PARALLELIZE = 16;
+
     /***
      * judge if the file in CWD has the same sha-1 with targetSHA1
      * (which also means they have the same contents)
+     * a file whose stat data is unchanged since it was indexed is not hashed again, see IndexUtils.getCachedSHA1()
      */
     public static boolean hasSameSHA1(String fileName, String targetSHA1) {
-        return getFileContentSHA1(fileName).equals(targetSHA1);
+        String cachedSHA1 = IndexUtils.getCachedSHA1(fileName);
+        if (cachedSHA1 != null) {
+            return cachedSHA1.equals(targetSHA1);
+        }
+        // stat before hashing, so a change during hashing will never be cached
+        IndexUtils.FileStat stat = IndexUtils.FileStat.of(join(CWD, fileName));
+        String fileSHA1 = getFileContentSHA1(fileName);
+        IndexUtils.refreshStat(fileName, stat, fileSHA1);
+        return fileSHA1.equals(targetSHA1);
     }
 
     /**
-     * read contents of file of some version from .gitlet/objects
+     * read contents of file of some version from packs, or from .gitlet/objects if not packed
      */
     public static String getFileContent(String fileSHA1) {
-        return readContentsAsString(join(OBJECTS_DIR, fileSHA1));
+        return new String(getFileBytes(fileSHA1), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * read the bytes of file of some version, like getFileContent()
+     */
+    public static byte[] getFileBytes(String fileSHA1) {
+        byte[] content = ObjectUtils.readObject(OBJECTS_DIR, PACKS_DIR, ObjectUtils.BLOB, fileSHA1);
+        if (content == null) {
+            throw new IllegalArgumentException("object " + fileSHA1 + " does not exist");
+        }
+        return content;
     }
 
     /**
@@ -37,10 +69,11 @@ public class FileUtils {
 
     /***
      * @param fileName the name of the file which is to be save as an object in .gitlet/objects
+     * @note the file is streamed, it will never be read into memory as a whole
      * @return sha1 of the file content
      */
     public static String createGitletObjectFile(String fileName) {
-        return writeGitletObjectsFile(readContentsAsString(join(CWD, fileName)));
+        return ObjectUtils.writeObject(OBJECTS_DIR, PACKS_DIR, ObjectUtils.BLOB, join(CWD, fileName));
     }
 
     /***
@@ -48,17 +81,174 @@ public class FileUtils {
      * @return sha1 of the file content
      */
     public static String writeGitletObjectsFile(String content) {
-        String fileObjectId = sha1(content);
-        writeContents(join(OBJECTS_DIR, fileObjectId), content);
-        return fileObjectId;
+        return ObjectUtils.writeObject(OBJECTS_DIR, PACKS_DIR, ObjectUtils.BLOB, content.getBytes(StandardCharsets.UTF_8));
     }
 
     public static void writeCWDFile(String fileName, String content) {
-        writeContents(join(CWD, fileName), content);
+        File file = join(CWD, fileName);
+        file.getParentFile().mkdirs();
+        writeContents(file, content);
+    }
+
+    public static void writeCWDFile(String fileName, byte[] content) {
+        File file = join(CWD, fileName);
+        file.getParentFile().mkdirs();
+        writeContents(file, content);
+    }
+
+    /***
+     * write the file of some version to CWD, the blob is streamed to the file, never read into memory as a whole
+     */
+    public static void restoreCWDFile(String fileName, String fileSHA1) {
+        File file = join(CWD, fileName);
+        file.getParentFile().mkdirs();
+        ObjectUtils.restoreObject(OBJECTS_DIR, PACKS_DIR, fileSHA1, file);
+    }
+
+    /**
+     * delete a file of the working tree, then its parent directories up to CWD which are left empty
+     * @return true if the file was deleted
+     */
+    public static boolean deleteCWDFile(String fileName) {
+        File file = join(CWD, fileName);
+        if (toCWDFileName(file.getPath()) == null || file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        deleteEmptyDirs(file.getParentFile());
+        return true;
+    }
+
+    /**
+     * delete dir and its parents up to CWD while they are empty directories
+     */
+    private static void deleteEmptyDirs(File dir) {
+        while (!dir.equals(CWD) && dir.isDirectory() && dir.delete()) { // File.delete() removes an empty directory
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * all regular files of the working tree, sorted. a file in a subdirectory is named by its path relative
+     * to CWD with '/', e.g. "src/Main.java". .gitlet and nested repositories (directories which have their
+     * own .gitlet) are skipped.
+     */
+    public static List<String> workingTreeFiles() {
+        List<String> result = new ArrayList<>();
+        try {
+            Files.walkFileTree(CWD.toPath(), new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    return isIgnoredDirectory(dir.toFile()) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile()) {
+                        result.add(toCWDFileName(CWD.toPath().relativize(file).toString()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE; // deleted while walking
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("failed to list the working tree");
+        }
+        result.sort(String::compareTo);
+        return result;
+    }
+
+    /**
+     * @return true for .gitlet and a directory (other than CWD) with its own .gitlet, they are not in the working tree
+     */
+    public static boolean isIgnoredDirectory(File dir) {
+        return dir.getName().equals(GITLET_DIR.getName())
+                || !dir.equals(CWD) && join(dir, GITLET_DIR.getName()).isDirectory();
+    }
+
+    /**
+     * @param path a path relative to CWD, it may contain "." and ".."
+     * @return the name of the file in the working tree, "" for CWD itself,
+     * or null if the path is out of the working tree or in .gitlet
+     */
+    public static String toCWDFileName(String path) {
+        Path normalized = CWD.toPath().resolve(path).normalize();
+        if (!normalized.startsWith(CWD.toPath()) || normalized.startsWith(GITLET_DIR.toPath())) {
+            return null;
+        }
+        return CWD.toPath().relativize(normalized).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * the files of the working tree a path of add stands for: a file, all files under a directory,
+     * or the files matched by a glob (with * ? [ or {, matched against names relative to CWD, e.g. "src/**.java").
+     * a path which exists is never taken as a glob, so "w[1].txt" is the file. the directory part of a glob
+     * (before the first * ? [ or {) is normalized like a path, so "./*.txt" is "*.txt".
+     * @return sorted file names, empty if nothing matches, null if the glob is invalid
+     */
+    public static List<String> matchWorkingTreeFiles(String path) {
+        List<String> result = new ArrayList<>();
+        String name = toCWDFileName(path);
+        if (name != null && join(CWD, name).exists()) {
+            File file = join(CWD, name);
+            if (file.isFile()) {
+                result.add(name);
+            } else if (file.isDirectory() && !isIgnoredDirectory(file)) {
+                String prefix = name.isEmpty() ? "" : name + "/";
+                for (String fileName : FsMonitorUtils.listFiles()) {
+                    if (fileName.startsWith(prefix)) {
+                        result.add(fileName);
+                    }
+                }
+            }
+            return result;
+        }
+        int globStart = indexOfGlobChar(path);
+        if (globStart < 0) {
+            return result;
+        }
+        int slash = path.lastIndexOf('/', globStart);
+        String dirName = toCWDFileName(slash < 0 ? "." : path.substring(0, slash + 1));
+        if (dirName == null) {
+            return result;
+        }
+        String glob = (dirName.isEmpty() ? "" : escapeGlob(dirName) + "/") + path.substring(slash + 1);
+        PathMatcher matcher;
+        try {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+        for (String fileName : FsMonitorUtils.listFiles()) {
+            if (matcher.matches(Paths.get(fileName))) {
+                result.add(fileName);
+            }
+        }
+        return result;
+    }
+
+    private static int indexOfGlobChar(String path) {
+        for (int i = 0; i < path.length(); ++i) {
+            if ("*?[{".indexOf(path.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
     }
 
+    /** a name matched literally in a glob */
+    private static String escapeGlob(String name) {
+        return name.replaceAll("([*?\\[\\]{}\\\\])", "\\\\$1");
+    }
+
+    /***
+     * sha1 of the bytes of the file, it is read in fixed-size buffers
+     */
     public static String getFileContentSHA1(String fileName) {
-        return sha1(readContentsAsString(join(CWD, fileName)));
+        return ObjectUtils.hashFile(join(CWD, fileName));
     }
 
     /**
@@ -66,21 +256,189 @@ public class FileUtils {
      * after the "untracked file" check, no file tracked by pre-commit will be deleted.
      * however, some files in CWD tracked by pre-commit and not tracked by after-commit will be deleted.
      * some files will be created, which is after-commit tracked files, but not in CWD.
+     * update: only the files which differ are written. a file with the same version in both commits is skipped
+     * if it is unchanged in CWD (it is checked by the stat cache, usually without reading the file).
+     * update: the files with another version are found by comparing the trees of the two commits
      * @note you must do "untracked file" check before calling this function
+     * @param currentCommit the commit which CWD is checked out from now
+     * @return names of the files written to CWD
      */
-    public static void restoreCommitFiles(Commit commit) {
+    public static List<String> restoreCommitFiles(Commit currentCommit, Commit commit) {
+        TreeMap<String, TreeUtils.Change> changes = CommitUtils.diffCommits(currentCommit, commit);
         HashMap<String, String> fileVersionMap = commit.getFileVersionMap();
-        List<String> CWDFileNames = plainFilenamesIn(CWD);
-        assert CWDFileNames != null;
+        List<String> CWDFileNames = workingTreeFiles();
+        // delete not tracked files in this commit
+        List<String> deletedFiles = new LinkedList<>();
         for (String CWDFileName : CWDFileNames) {
-            // delete not tracked files in this commit
             if (!fileVersionMap.containsKey(CWDFileName)) {
-                Utils.restrictedDelete(join(CWD, CWDFileName));
+                deletedFiles.add(CWDFileName);
             }
         }
-        // restore files to CWD
+        // restore added and changed files to CWD
+        Map<String, String> writtenFiles = new LinkedHashMap<>();
         for (String fileName : fileVersionMap.keySet()) {
-            writeCWDFile(fileName, getFileContent(fileVersionMap.get(fileName)));
+            String fileSHA1 = fileVersionMap.get(fileName);
+            if (!changes.containsKey(fileName) && join(CWD, fileName).exists()
+                    && hasSameSHA1(fileName, fileSHA1)) {
+                continue;
+            }
+            writtenFiles.put(fileName, fileSHA1);
+        }
+        restoreCWDFiles(writtenFiles, deletedFiles);
+        if (Repository.verbose) {
+            System.out.println(writtenFiles.size() + " files written, " + deletedFiles.size() + " files deleted.");
+        }
+        return new LinkedList<>(writtenFiles.keySet());
+    }
+
+    /**
+     * write many files of some versions to CWD and delete some files, all or nothing.
+     * blobs are read and written to temporary files in .gitlet by a bounded pool of writers, since the time is
+     * mostly spent waiting for I/O. only after every file is written, the files which are replaced or deleted are
+     * moved aside to .gitlet, and the temporary files are renamed to their names in CWD. the files moved aside are
+     * deleted only after every rename has succeeded. if any write or rename fails, everything is undone (the renamed
+     * files are removed, the files moved aside are moved back, the temporary files are removed), so CWD is not
+     * changed, and the error is thrown.
+     * @param fileVersions file name --> version
+     * @param deletedFiles names of files to be deleted from CWD
+     */
+    public static void restoreCWDFiles(Map<String, String> fileVersions, List<String> deletedFiles) {
+        Map<String, File> tempFiles = new ConcurrentHashMap<>();
+        List<Callable<Void>> writes = new ArrayList<>();
+        for (Map.Entry<String, String> entry : fileVersions.entrySet()) {
+            writes.add(() -> {
+                File tempFile = File.createTempFile("checkout-", ".tmp", GITLET_DIR);
+                tempFiles.put(entry.getKey(), tempFile);
+                ObjectUtils.restoreObject(OBJECTS_DIR, PACKS_DIR, entry.getValue(), tempFile);
+                return null;
+            });
+        }
+        try {
+            runWrites(writes);
+        } catch (RuntimeException e) {
+            tempFiles.values().forEach(File::delete);
+            throw e;
+        }
+        Set<String> replacedFiles = new LinkedHashSet<>(deletedFiles);
+        replacedFiles.addAll(tempFiles.keySet());
+        Map<String, File> movedAside = new LinkedHashMap<>();
+        List<String> renamedFiles = new ArrayList<>();
+        String current = null;
+        try {
+            for (String fileName : replacedFiles) {
+                current = fileName;
+                File file = join(CWD, fileName);
+                if (toCWDFileName(file.getPath()) == null || !file.isFile()) {
+                    continue;
+                }
+                File backup = File.createTempFile("checkout-", ".bak", GITLET_DIR);
+                Files.move(file.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                movedAside.put(fileName, backup);
+            }
+            for (Map.Entry<String, File> entry : tempFiles.entrySet()) {
+                current = entry.getKey();
+                File file = join(CWD, entry.getKey());
+                file.getParentFile().mkdirs();
+                Files.move(entry.getValue().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                renamedFiles.add(entry.getKey());
+            }
+        } catch (IOException e) {
+            List<String> kept = undoRestore(tempFiles, movedAside, renamedFiles);
+            throw new RuntimeException("failed to write " + current
+                    + (kept.isEmpty() ? "" : ", files which could not be moved back are kept in .gitlet: " + kept));
+        }
+        for (File backup : movedAside.values()) {
+            backup.delete();
+        }
+        for (String fileName : deletedFiles) {
+            deleteEmptyDirs(join(CWD, fileName).getParentFile());
+        }
+    }
+
+    /**
+     * put CWD back as it was before restoreCWDFiles() renamed some files, and remove its temporary files.
+     * a file which can not be moved back is left in .gitlet as checkout-*.bak, it is never lost.
+     * @return "[file name] as [backup name]" of such files
+     */
+    private static List<String> undoRestore(Map<String, File> tempFiles, Map<String, File> movedAside,
+                                    List<String> renamedFiles) {
+        for (String fileName : renamedFiles) {
+            File file = join(CWD, fileName);
+            file.delete();
+            deleteEmptyDirs(file.getParentFile());
+        }
+        tempFiles.values().forEach(File::delete);
+        List<String> kept = new ArrayList<>();
+        for (Map.Entry<String, File> entry : movedAside.entrySet()) {
+            File file = join(CWD, entry.getKey());
+            file.getParentFile().mkdirs();
+            try {
+                Files.move(entry.getValue().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                kept.add(entry.getKey() + " as " + entry.getValue().getName());
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * run writes on at most MAX_WRITERS threads, a few writes are just run in this thread
+     * @throws RuntimeException if any write fails, after all writes have stopped
+     */
+    private static void runWrites(List<Callable<Void>> writes) {
+        if (writes.size() < MIN_WRITES_TO_PARALLELIZE || MAX_WRITERS <= 1) {
+            for (Callable<Void> write : writes) {
+                runWrite(write);
+            }
+            return;
+        }
+        ExecutorService writers = Executors.newFixedThreadPool(Math.min(MAX_WRITERS, writes.size()));
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (Callable<Void> write : writes) {
+                results.add(writers.submit(() -> {
+                    runWrite(write);
+                    return null;
+                }));
+            }
+            RuntimeException failure = null;
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                        results.forEach(future -> future.cancel(true)); // the other writes are useless now
+                    }
+                } catch (CancellationException | InterruptedException e) {
+                    if (failure == null) {
+                        failure = new RuntimeException("checkout is interrupted");
+                        results.forEach(future -> future.cancel(true));
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            // a cancelled write may still be running, it must stop before its temporary file is removed
+            writers.shutdownNow();
+            try {
+                writers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void runWrite(Callable<Void> write) {
+        try {
+            write.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("failed to write file", e);
         }
     }
 
@@ -88,8 +446,16 @@ public class FileUtils {
      * @param fileName the file name of some commit which will be restored to CWD or deleted in CWD
      */
     public static boolean isOverwritingOrDeletingCWDUntracked(String fileName, Commit currentCommit) {
-        List<String> CWDFileNames = plainFilenamesIn(CWD);
-        assert CWDFileNames != null && currentCommit != null;
+        assert currentCommit != null;
+        return isOverwritingOrDeletingCWDUntracked(fileName, currentCommit, new HashSet<>(workingTreeFiles()));
+    }
+
+    /**
+     * the same check, with the file names in CWD listed once by the caller (for checking many files)
+     */
+    public static boolean isOverwritingOrDeletingCWDUntracked(String fileName, Commit currentCommit,
+                                                              Set<String> CWDFileNames) {
+        assert currentCommit != null;
         return !CommitUtils.isTrackedByCommit(currentCommit, fileName) && CWDFileNames.contains(fileName);
     }
 }
@@ -0,0 +1,565 @@
+package gitlet;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 16:40
+ * @Description an optional file system monitor. "gitlet fsmonitor" runs a daemon which watches the working tree
+ * (every directory) with a WatchService and keeps the list of files in it and the time of the last change of every
+ * changed file in memory. status and add ask it over a local TCP connection instead of listing CWD and taking the
+ * stat of every file, the port is in .gitlet/fsmonitor-port.
+ * <p>
+ * it works like git's fsmonitor: a file is "valid" if its contents were checked against its stat data in the
+ * index, a valid file which is not changed since then is trusted without a stat. .gitlet/fsmonitor-token keeps the
+ * time of the query which checked them (the token) and the files with stat data which were NOT valid at the token,
+ * so the daemon only answers the files changed since the token, and the cost of a query and of saving the token
+ * grows with the number of changed files, not with the size of the working tree.
+ * <p>
+ * for every query the daemon creates a cookie file and answers when it sees the cookie, events are delivered in
+ * order, so every change made before the query is in the answer. nothing is trusted (and CWD is listed as before)
+ * if the daemon is not running, does not answer in time, or has not been watching since the token.
+ */
+public class FsMonitorUtils {
+    private static final File PORT_FILE = join(GITLET_DIR, "fsmonitor-port");
+    private static final File TOKEN_FILE = join(GITLET_DIR, "fsmonitor-token");
+    private static final File COOKIES_DIR = join(GITLET_DIR, "fsmonitor-cookies");
+    private static final String ANSWER_HEADER = "gitlet-fsmonitor 2";
+
+    /** how often the daemon checks whether it is stopped or the repository is removed (milliseconds) */
+    private static final long POLL_INTERVAL = 200;
+    /** how long a query waits for its cookie */
+    private static final long COOKIE_TIMEOUT = 2000;
+    /** how long "fsmonitor start" and "fsmonitor stop" wait for the daemon */
+    private static final long START_TIMEOUT = 10000;
+    /** changes older than the token of a query are kept this long for a command which read an older token */
+    private static final long CHANGES_KEEP = 10000;
+
+    /** what the daemon knows, it is only used by the thread which handles the events */
+    private static class State {
+        /** the daemon has seen every change since this time */
+        long since;
+        /** changed file name --> time of its last change */
+        Map<String, Long> changedFiles = new HashMap<>();
+        /** regular files in the working tree */
+        TreeSet<String> files = new TreeSet<>();
+    }
+
+    /** a query waiting for its cookie */
+    private static class Query {
+        final String[] request;
+        final CompletableFuture<String> answer = new CompletableFuture<>();
+
+        Query(String[] request) {
+            this.request = request;
+        }
+    }
+
+    /** the answer of the daemon to this process, null if there is no usable daemon */
+    private static class Snapshot {
+        /** the files in the working tree, asked for only if they are needed */
+        List<String> files;
+        /** false if nothing can be trusted, the daemon may have missed changes since the last token */
+        boolean continuous;
+        /** files not valid at the last token, and files changed since it */
+        Set<String> untrustedFiles = new HashSet<>();
+        /** time of this query, it becomes the token when the index is saved */
+        long token;
+    }
+
+    private static boolean queried = false;
+    private static Snapshot snapshot;
+    /** files whose stat data has been checked or recorded after the query */
+    private static final Set<String> verifiedFiles = new HashSet<>();
+    /** files trusted in this command, for the -v report */
+    private static final Set<String> trustedFiles = new HashSet<>();
+    /** set by "fsmonitor stop", read by the thread which handles the events */
+    private static volatile boolean stopping = false;
+
+    /**
+     * usage: fsmonitor [start | stop | status]
+     * without an argument the daemon is run in this process until "fsmonitor stop", e.g. java gitlet.Main fsmonitor &
+     * start runs it in another process and returns when it answers.
+     */
+    public static void fsmonitor(String[] args) {
+        String action = args.length == 0 ? "" : args[0];
+        switch (action) {
+            case "":
+                if (isRunning()) {
+                    System.out.println("fsmonitor is already running.");
+                    return;
+                }
+                runDaemon();
+                break;
+            case "start":
+                if (isRunning()) {
+                    System.out.println("fsmonitor is already running.");
+                    return;
+                }
+                startDaemon();
+                break;
+            case "stop":
+                if (ask("stop") == null) {
+                    System.out.println("fsmonitor is not running.");
+                    return;
+                }
+                waitFor(() -> !PORT_FILE.exists());
+                break;
+            case "status":
+                System.out.println(isRunning() ? "fsmonitor is running." : "fsmonitor is not running.");
+                break;
+            default:
+                System.out.println(INCORRECT_OPERANDS_WARNING);
+        }
+    }
+
+    /**
+     * forget the answer of the daemon, the next command must ask again. it is called before every command of ServeUtils
+     */
+    public static void reset() {
+        queried = false;
+        snapshot = null;
+        verifiedFiles.clear();
+        trustedFiles.clear();
+    }
+
+    /**
+     * the files in the working tree, from the daemon if it can answer, otherwise the working tree is walked
+     */
+    public static List<String> listFiles() {
+        Snapshot answer = query();
+        if (answer != null && answer.files == null) {
+            List<String> lines = ask("files");
+            if (lines != null && !lines.isEmpty()) {
+                answer.files = lines.subList(1, lines.size());
+            }
+        }
+        return answer == null || answer.files == null ? FileUtils.workingTreeFiles() : answer.files;
+    }
+
+    /**
+     * it is only asked for files with stat data in the index
+     * @return true if the file has not changed since its stat data was checked against the index,
+     * so its stat data is still right and the stat can be skipped
+     */
+    public static boolean isTrusted(String fileName) {
+        Snapshot answer = query();
+        boolean trusted = answer != null && answer.continuous && !answer.untrustedFiles.contains(fileName);
+        if (trusted) {
+            trustedFiles.add(fileName);
+        }
+        return trusted;
+    }
+
+    /**
+     * record that the stat data of a file in the index has just been checked (or taken) in this command.
+     * it only counts after a query, a change between an earlier check and the query could be missed otherwise.
+     */
+    public static void markVerified(String fileName) {
+        if (snapshot != null) {
+            verifiedFiles.add(fileName);
+        }
+    }
+
+    /**
+     * save the token of this query with the files which are not valid at it, it is called when the index is saved.
+     * a file is valid only while it has stat data in the index. only the files which were not trusted are written,
+     * except after the daemon has (re)started, when every file with stat data which was not checked is written once.
+     */
+    public static void saveValidFiles(Set<String> filesWithStat) {
+        if (snapshot == null) {
+            return;
+        }
+        StringBuilder contents = new StringBuilder().append(snapshot.token).append('\n');
+        Collection<String> candidates = snapshot.continuous ? snapshot.untrustedFiles : filesWithStat;
+        for (String fileName : new TreeSet<>(candidates)) {
+            if (filesWithStat.contains(fileName) && !verifiedFiles.contains(fileName)) {
+                contents.append(fileName).append('\n');
+            }
+        }
+        writeAtomically(TOKEN_FILE, contents.toString());
+    }
+
+    /**
+     * with -v, status prints how many files fsmonitor saved from a stat
+     */
+    public static void report() {
+        if (!Repository.verbose) {
+            return;
+        }
+        if (snapshot == null) {
+            System.out.println("fsmonitor not used.");
+        } else {
+            System.out.println(trustedFiles.size() + " files trusted by fsmonitor.");
+        }
+    }
+
+    /**
+     * ask the daemon once in a command
+     */
+    private static Snapshot query() {
+        if (!queried) {
+            queried = true;
+            snapshot = askChanges();
+        }
+        return snapshot;
+    }
+
+    private static Snapshot askChanges() {
+        long lastToken = -1;
+        List<String> untrustedFiles = Collections.emptyList();
+        if (TOKEN_FILE.exists()) {
+            List<String> lines = Arrays.asList(readContentsAsString(TOKEN_FILE).split("\n"));
+            try {
+                lastToken = Long.parseLong(lines.get(0));
+                untrustedFiles = lines.subList(1, lines.size());
+            } catch (NumberFormatException e) {
+                lastToken = -1;
+            }
+        }
+        List<String> lines = ask("changed", String.valueOf(lastToken));
+        if (lines == null || lines.isEmpty()) {
+            return null;
+        }
+        String[] times = lines.get(0).split(" ");
+        Snapshot result = new Snapshot();
+        result.token = Long.parseLong(times[1]);
+        // a daemon started after the last token may have missed changes
+        result.continuous = lastToken >= 0 && Long.parseLong(times[0]) <= lastToken;
+        if (result.continuous) {
+            result.untrustedFiles.addAll(untrustedFiles);
+            result.untrustedFiles.addAll(lines.subList(1, lines.size()));
+        }
+        return result;
+    }
+
+    private static boolean isRunning() {
+        return ask("ping") != null;
+    }
+
+    /**
+     * send a request to the daemon. the answer is the header, a line "[since] [token]" (except for ping and stop)
+     * and a file name in each line
+     * @return the lines of the answer after the header, or null if there is no daemon or it does not answer
+     */
+    private static List<String> ask(String... request) {
+        String[] address;
+        try {
+            address = Files.readString(PORT_FILE.toPath(), StandardCharsets.UTF_8).trim().split(" ");
+        } catch (IOException e) {
+            return null;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address[0])),
+                    (int) COOKIE_TIMEOUT);
+            socket.setSoTimeout((int) (2 * COOKIE_TIMEOUT));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            // the secret tells this daemon from another process which took the port of a dead one
+            out.write(address[1] + " " + String.join(" ", request) + "\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            if (!ANSWER_HEADER.equals(in.readLine())) {
+                return null;
+            }
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * run the daemon in another gitlet process, it is started with the java command and class path of this one
+     */
+    private static void startDaemon() {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "fsmonitor");
+        builder.directory(CWD);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process process;
+        try {
+            process = builder.start();
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to start fsmonitor");
+        }
+        if (!waitFor(() -> !process.isAlive() || isRunning()) || !process.isAlive()) {
+            process.destroy();
+            System.out.println("fsmonitor failed to start.");
+        }
+    }
+
+    /**
+     * @return false if the condition is still false after START_TIMEOUT
+     */
+    private static boolean waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * watch the working tree until "fsmonitor stop" or the repository is removed.
+     * queries are read by other threads, they wait for their cookies, which are handled with the other events.
+     */
+    private static void runDaemon() {
+        COOKIES_DIR.mkdir();
+        State state = new State();
+        Map<String, Query> queries = new ConcurrentHashMap<>();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService();
+             ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            WatchKey cookiesKey = COOKIES_DIR.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            // watched directory --> its name in the working tree
+            Map<WatchKey, String> watchedDirs = new HashMap<>();
+            // a directory is watched before its files are listed, so a file created in between is not missed
+            state.since = System.currentTimeMillis();
+            watchTree(watcher, "", watchedDirs, state, false);
+            String secret = Long.toHexString(new Random().nextLong());
+            Thread acceptor = new Thread(() -> acceptQueries(server, secret, queries));
+            acceptor.setDaemon(true);
+            acceptor.start();
+            writeAtomically(PORT_FILE, server.getLocalPort() + " " + secret + "\n");
+            while (!stopping && GITLET_DIR.exists()) {
+                WatchKey key = watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    if (key == cookiesKey) {
+                        handleCookies(key, state, queries);
+                    } else {
+                        handleEvents(watcher, key, watchedDirs, state);
+                    }
+                    if (!key.reset()) {
+                        watchedDirs.remove(key); // the directory is deleted
+                    }
+                    key = watcher.poll();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("fsmonitor failed to watch " + CWD);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            PORT_FILE.delete();
+        }
+    }
+
+    private static void acceptQueries(ServerSocket server, String secret, Map<String, Query> queries) {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return; // the daemon is stopped
+            }
+            Thread session = new Thread(() -> {
+                try (Socket client = socket) {
+                    client.setSoTimeout((int) COOKIE_TIMEOUT);
+                    answerQuery(client, secret, queries);
+                } catch (IOException e) {
+                    // the client is gone, nothing to answer
+                }
+            });
+            session.setDaemon(true);
+            session.start();
+        }
+    }
+
+    private static void answerQuery(Socket client, String secret, Map<String, Query> queries) throws IOException {
+        String line = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8))
+                .readLine();
+        String[] request = line == null ? new String[0] : line.split(" ");
+        if (request.length < 2 || !request[0].equals(secret)
+                || request[1].equals("changed") && (request.length != 3 || !request[2].matches("-?\\d{1,18}"))) {
+            return;
+        }
+        String answer;
+        if (request[1].equals("ping")) {
+            answer = "";
+        } else if (request[1].equals("stop")) {
+            stopping = true;
+            answer = "";
+        } else {
+            // the answer is made by the event thread when it sees the cookie, after every earlier change
+            String cookieName = "cookie-" + UUID.randomUUID();
+            File cookie = join(COOKIES_DIR, cookieName);
+            Query query = new Query(Arrays.copyOfRange(request, 1, request.length));
+            queries.put(cookieName, query);
+            try {
+                if (!cookie.createNewFile()) {
+                    return;
+                }
+                answer = query.answer.get(COOKIE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                return;
+            } finally {
+                queries.remove(cookieName);
+                cookie.delete();
+            }
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+        out.write(ANSWER_HEADER + "\n" + answer);
+        out.flush();
+    }
+
+    private static void handleCookies(WatchKey key, State state, Map<String, Query> queries) {
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Query query = event.kind() == StandardWatchEventKinds.OVERFLOW ? null
+                    : queries.get(event.context().toString());
+            if (query != null) {
+                query.answer.complete(answer(query.request, state, now));
+            }
+        }
+    }
+
+    /**
+     * "changed [last token]": the files changed since the last token (none if the daemon started after it),
+     * "files": every file in the working tree
+     */
+    private static String answer(String[] request, State state, long now) {
+        StringBuilder result = new StringBuilder().append(state.since).append(' ').append(now).append('\n');
+        if (request[0].equals("files")) {
+            for (String fileName : state.files) {
+                result.append(fileName).append('\n');
+            }
+        } else {
+            long lastToken = Long.parseLong(request[1]);
+            // older changes will never be asked for again, unless by a command which read an older token just now
+            state.changedFiles.values().removeIf(time -> time < lastToken && now - time > CHANGES_KEEP);
+            if (lastToken >= state.since) {
+                for (Map.Entry<String, Long> entry : state.changedFiles.entrySet()) {
+                    if (entry.getValue() >= lastToken) {
+                        result.append(entry.getKey()).append('\n');
+                    }
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * watch a directory of the working tree and every directory under it, and add their files to the state
+     * @param changed true for a directory created after the daemon started, its files are changes
+     */
+    private static void watchTree(WatchService watcher, String dirName, Map<WatchKey, String> watchedDirs,
+                                  State state, boolean changed) throws IOException {
+        long now = System.currentTimeMillis();
+        Path root = dirName.isEmpty() ? CWD.toPath() : join(CWD, dirName).toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (FileUtils.isIgnoredDirectory(dir.toFile())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchedDirs.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), nameOf(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    state.files.add(nameOf(file));
+                    if (changed) {
+                        state.changedFiles.put(nameOf(file), now);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void handleEvents(WatchService watcher, WatchKey key, Map<WatchKey, String> watchedDirs,
+                                     State state) throws IOException {
+        String dirName = watchedDirs.get(key);
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dirName == null) {
+                // events are lost, start again as if the daemon was started now
+                state.since = now;
+                state.changedFiles.clear();
+                state.files.clear();
+                watchTree(watcher, "", watchedDirs, state, false);
+                return;
+            }
+            String name = dirName.isEmpty() ? event.context().toString() : dirName + "/" + event.context();
+            File file = join(CWD, name);
+            if (file.isDirectory()) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && !FileUtils.isIgnoredDirectory(file)) {
+                    watchTree(watcher, name, watchedDirs, state, true);
+                }
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // it may be a directory, then all files under it are gone
+                Set<String> filesUnder = state.files.subSet(name + "/", name + (char) ('/' + 1));
+                for (String fileName : filesUnder) {
+                    state.changedFiles.put(fileName, now);
+                }
+                filesUnder.clear();
+            }
+            state.changedFiles.put(name, now);
+            if (file.isFile()) {
+                state.files.add(name);
+            } else {
+                state.files.remove(name);
+            }
+        }
+    }
+
+    /**
+     * @return name of a path in the working tree, relative to CWD with '/'
+     */
+    private static String nameOf(Path path) {
+        return CWD.toPath().relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * write to a temp file and rename it, so a reader never sees a half-written file
+     */
+    private static void writeAtomically(File file, String contents) {
+        File tempFile = join(GITLET_DIR, file.getName() + ".tmp");
+        try {
+            Files.write(tempFile.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to write " + file.getName());
+        }
+    }
+}
@@ -27,11 +27,23 @@ public class GitletConstants {
     public static final File COMMITS_DIR = join(GITLET_DIR, "commits");
     /** the object directory, store explicit files in it */
     public static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
+    /** the packs directory, store packed commits and objects, see PackUtils */
+    public static final File PACKS_DIR = join(GITLET_DIR, "packs");
     public static final File BRANCHES_DIR = join(GITLET_DIR, "branches");
+    /** older versions stored the contents of staged files here, now it is only read to migrate them to STAGING_DIR */
     public static final File STAGED_FILE = join(GITLET_DIR, "staged-files");
+    /** the staging area, store blobs of staged files before they are committed to OBJECTS_DIR */
+    public static final File STAGING_DIR = join(GITLET_DIR, "staging");
+    /** changes of the index since INDEX_FILE was written, see IndexUtils.saveIndex() */
+    public static final File INDEX_JOURNAL_FILE = join(GITLET_DIR, "index-journal");
+    /** parents, commit time and generation number of every commit, see CommitGraphUtils */
+    public static final File COMMIT_GRAPH_FILE = join(GITLET_DIR, "commit-graph");
+    /** changed-path Bloom filters of the commits in COMMIT_GRAPH_FILE, see ChangedPathUtils */
+    public static final File COMMIT_GRAPH_BLOOM_FILE = join(GITLET_DIR, "commit-graph-bloom");
 
     public static final String UNINITIALIZED_WARNING = "Not in an initialized Gitlet directory.";
     public static final String INCORRECT_OPERANDS_WARNING = "Incorrect operands.";
+    public static final String AMBIGUOUS_COMMIT_ID_WARNING = "That commit id prefix is ambiguous.";
 
     public static final String MERGE_MODIFY_UNTRACKED_WARNING = "There is an untracked file in the way; delete it, or add and commit it first.";
 }
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import static gitlet.GitletConstants.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 21:30
+ * @Description the grep command: search the committed versions of files for a pattern.
+ * a blob is the same for every commit and path which reference it, so the search has three steps:
+ * 1. the ids of all distinct blobs are collected from the trees of the commits, a tree shared by many commits
+ *    is read once (see TreeUtils.collectBlobs()).
+ * 2. every blob is searched once, on all cores. a blob is streamed line by line, it is never read as a whole.
+ * 3. the blobs which match are mapped back to the (commit, file) pairs which reference them, only subtrees which
+ *    have such a blob are read (see TreeUtils.findFiles()).
+ */
+public class GrepUtils {
+    /** a blob with a zero byte in its first bytes is binary, like git does (see DiffUtils) */
+    private static final int BINARY_CHECK_LENGTH = 8000;
+    /** a longer line is searched in pieces of this length, so a blob without '\n' is not held in memory */
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** a blob is read in pieces of this length, the first piece is checked for a zero byte */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * the lines of a blob which match
+     */
+    private static class BlobMatch {
+        final boolean binary;
+        final List<Integer> lineNumbers = new ArrayList<>();
+        final List<String> lines = new ArrayList<>();
+
+        BlobMatch(boolean binary) {
+            this.binary = binary;
+        }
+    }
+
+    /**
+     * grep pattern [--all-history], pattern is a java regular expression, found anywhere in a line.
+     * without --all-history the files of the head commit are searched, a line is printed as [file]:[line number]:[line].
+     * with --all-history the commits of all branches are searched, newest first, and a line is printed as
+     * [commit id]:[file]:[line number]:[line]. a binary file prints "Binary file [name] matches" instead.
+     */
+    public static void grep(String... args) {
+        boolean allHistory = args.length == 2 && args[1].equals("--all-history");
+        if (args.length != 1 && !allHistory) {
+            System.out.println(INCORRECT_OPERANDS_WARNING);
+            return;
+        }
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(args[0]);
+        } catch (PatternSyntaxException e) {
+            System.out.println("Invalid pattern.");
+            return;
+        }
+        List<String> commitIds = allHistory ? historyCommitIds()
+                : Collections.singletonList(Repository.getHeadCommitId());
+
+        // 1. distinct blobs of all commits
+        Set<String> visitedTrees = new HashSet<>();
+        Set<String> blobIds = new HashSet<>();
+        for (String commitId : commitIds) {
+            Commit commit = CommitUtils.readCommit(commitId);
+            if (commit.getTreeId() != null) {
+                TreeUtils.collectBlobs(commit.getTreeId(), visitedTrees, blobIds);
+            } else {
+                blobIds.addAll(commit.getFileVersionMap().values());
+            }
+        }
+
+        // 2. every blob is searched once, on all cores
+        Map<String, BlobMatch> matches = new ArrayList<>(blobIds).parallelStream()
+                .map(blobId -> new AbstractMap.SimpleEntry<>(blobId, searchBlob(blobId, pattern)))
+                .filter(entry -> entry.getValue() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (matches.isEmpty()) {
+            return;
+        }
+
+        // 3. the matched blobs are mapped back to the files of the commits
+        OutputStream out = new BufferedOutputStream(System.out, BUFFER_SIZE);
+        Map<String, Boolean> hasBlobs = new HashMap<>();
+        try {
+            for (String commitId : commitIds) {
+                Commit commit = CommitUtils.readCommit(commitId);
+                TreeMap<String, String> files = new TreeMap<>();
+                if (commit.getTreeId() != null) {
+                    TreeUtils.findFiles(commit.getTreeId(), "", matches.keySet(), hasBlobs, files);
+                } else {
+                    for (Map.Entry<String, String> entry : commit.getFileVersionMap().entrySet()) {
+                        if (matches.containsKey(entry.getValue())) {
+                            files.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                for (Map.Entry<String, String> file : files.entrySet()) {
+                    String name = (allHistory ? commitId + ":" : "") + file.getKey();
+                    printMatch(out, name, matches.get(file.getValue()));
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write grep results");
+        }
+    }
+
+    /**
+     * @return commits of all branches (and remote branches), newest first
+     */
+    private static List<String> historyCommitIds() {
+        Set<String> commitIds = new HashSet<>();
+        for (String branchName : BranchUtils.getAllBranchNames()) {
+            commitIds.addAll(CommitGraphUtils.ancestors(BranchUtils.getCommitId(branchName)));
+        }
+        List<String> result = new ArrayList<>(commitIds);
+        result.sort(Comparator.comparingLong(CommitGraphUtils::getCommitTime).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return result;
+    }
+
+    private static void printMatch(OutputStream out, String name, BlobMatch match) throws IOException {
+        if (match.binary) {
+            out.write(("Binary file " + name + " matches\n").getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        for (int i = 0; i < match.lines.size(); ++i) {
+            out.write((name + ":" + match.lineNumbers.get(i) + ":" + match.lines.get(i) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * search a blob line by line as it is inflated
+     * @return null if no line matches. a binary blob stops at its first match.
+     */
+    private static BlobMatch searchBlob(String blobId, Pattern pattern) {
+        InputStream object = ObjectUtils.openObject(OBJECTS_DIR, PACKS_DIR, ObjectUtils.BLOB, blobId);
+        if (object == null) {
+            throw new IllegalArgumentException("object " + blobId + " does not exist");
+        }
+        try (InputStream in = object) {
+            // the first piece read decides whether the blob is binary
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int length = in.readNBytes(buffer, 0, BINARY_CHECK_LENGTH);
+            BlobMatch match = new BlobMatch(isBinary(buffer, length));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int lineNumber = 1;
+            for (; length > 0; length = in.read(buffer)) {
+                int start = 0;
+                for (int i = 0; i < length; ++i) {
+                    boolean newline = buffer[i] == '\n';
+                    if (!newline && line.size() + i - start < MAX_LINE_LENGTH) {
+                        continue;
+                    }
+                    // a line ends here, or a long line is searched in pieces (of the same line number)
+                    line.write(buffer, start, i - start);
+                    if (searchLine(line, lineNumber, pattern, match) && match.binary) {
+                        return match;
+                    }
+                    start = newline ? i + 1 : i;
+                    lineNumber += newline ? 1 : 0;
+                }
+                line.write(buffer, start, length - start);
+            }
+            if (line.size() > 0 && searchLine(line, lineNumber, pattern, match) && match.binary) {
+                return match;
+            }
+            return match.lines.isEmpty() ? null : match;
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read object " + blobId);
+        }
+    }
+
+    /**
+     * search a line and clear it
+     * @return true if the line matches
+     */
+    private static boolean searchLine(ByteArrayOutputStream line, int lineNumber, Pattern pattern, BlobMatch match) {
+        String text = line.toString(StandardCharsets.UTF_8);
+        line.reset();
+        if (!pattern.matcher(text).find()) {
+            return false;
+        }
+        match.lineNumbers.add(lineNumber);
+        match.lines.add(text);
+        return true;
+    }
+
+    private static boolean isBinary(byte[] head, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (head[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
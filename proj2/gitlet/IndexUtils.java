@@ -1,9 +1,14 @@
 package gitlet;
 
-import java.io.File;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static gitlet.GitletConstants.*;
 import static gitlet.Utils.*;
@@ -18,60 +23,470 @@ public class IndexUtils {
     /** read the INDEX file(which stores a map, file name --> version), it represents next commits' name --> version map,
      * which means just after one commit, the indexMap equals to commit fileVersionMap */
     public static HashMap<String, String> indexMap;
-    /** staged files, which stages file id(sha1) --> file contents, stage or unstage file */
-    public static HashMap<String, String> stagedFileContents;
+    /** file name --> stat data of the file when its content was known to be indexMap.get(file name), like git's index */
+    private static HashMap<String, FileStat> statMap = new HashMap<>();
+    /** changes of indexMap which are not saved yet, one journal line for each change, see saveIndex() */
+    private static final List<String> pendingChanges = new LinkedList<>();
+    /** true if indexMap is replaced as a whole, then saveIndex() must rewrite INDEX_FILE */
+    private static boolean indexReplaced = false;
+    /** number of lines in INDEX_JOURNAL_FILE */
+    private static int journalLength = 0;
+    /** the journal is never merged into INDEX_FILE before it has this many lines */
+    private static final int MIN_JOURNAL_LENGTH_TO_MERGE = 1024;
+    /** when the index was written last time (nanoseconds), stat data recorded at or after it is "racy" */
+    private static long indexWriteTime = 0;
+    /** stat data of INDEX_FILE and INDEX_JOURNAL_FILE when this process read or wrote them, see reloadIfChanged() */
+    private static FileStat indexFileStat;
+    private static FileStat journalFileStat;
+
+    private static final int INDEX_MAGIC = 0x47495831; // "GIX1"
+    private static final int INDEX_VERSION = 1;
+
+    /**
+     * the stat data of a file: if the size, modification time and file key (inode) of a file are all unchanged,
+     * its content is taken as unchanged and it will not be hashed again.
+     */
+    public static class FileStat {
+        final long size;
+        final long modifiedTime;
+        final String fileKey;
+
+        FileStat(long size, long modifiedTime, String fileKey) {
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.fileKey = fileKey;
+        }
+
+        /**
+         * @return stat data of the file, or null if the file does not exist
+         */
+        static FileStat of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                Object fileKey = attributes.fileKey();
+                return new FileStat(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                        fileKey == null ? "-" : fileKey.toString().replace(' ', '_'));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        boolean sameAs(FileStat other) {
+            return other != null && size == other.size && modifiedTime == other.modifiedTime
+                    && fileKey.equals(other.fileKey);
+        }
+    }
 
     static {
         if (Repository.isInitialized()) {
-            indexMap = readIndex();
-            stagedFileContents = readStagedContents();
+            loadIndex();
+        }
+    }
+
+    /**
+     * read the index again if another process has changed it since this process read or saved it.
+     * it is for commands run one after another in one process (see ServeUtils), unsaved changes are dropped.
+     */
+    public static void reloadIfChanged() {
+        if (!Repository.isInitialized()) {
+            indexMap = null;
+            return;
+        }
+        if (indexMap != null && pendingChanges.isEmpty() && !indexReplaced
+                && sameStat(indexFileStat, INDEX_FILE) && sameStat(journalFileStat, INDEX_JOURNAL_FILE)) {
+            return;
         }
+        pendingChanges.clear();
+        indexReplaced = false;
+        loadIndex();
+    }
+
+    private static void loadIndex() {
+        indexMap = readIndex();
+        migrateStagedContents();
+        rememberIndexFileStats();
+    }
+
+    private static void rememberIndexFileStats() {
+        indexFileStat = FileStat.of(INDEX_FILE);
+        journalFileStat = FileStat.of(INDEX_JOURNAL_FILE);
+        indexWriteTime = Math.max(modifiedTime(INDEX_FILE), modifiedTime(INDEX_JOURNAL_FILE));
+    }
+
+    private static boolean sameStat(FileStat stat, File file) {
+        FileStat current = FileStat.of(file);
+        return stat == null ? current == null : stat.sameAs(current);
     }
 
     /***
-     * this function will write indexMap & stagedFileContents to INDEX_FILE & STAGED_FILE
-     * every change to index must be saved
-     * @note you must storage stagedFileContents to STAGED_FILE and clear it after one commit!
+     * this function will save the changes of indexMap, every change to index must be saved.
+     * usually it only appends the changed entries to INDEX_JOURNAL_FILE, so its cost grows with the number of changed
+     * entries, not with the size of the index or staged files. INDEX_FILE is rewritten (and the journal is cleared)
+     * only if indexMap is replaced as a whole, or the journal grows longer than the index itself.
+     * journal line: "= [sha1] [size] [modified time] [file key] [file name]" stages a file with its stat data,
+     * "- [file name]" unstages a file. "+ [sha1] [file name]" (without stat data) is written by older versions.
+     * the stat data written at or after the time of the write is smudged, see smudgeRacyEntries().
      */
     public static void saveIndex() {
-        Utils.writeObject(INDEX_FILE, indexMap);
-        Utils.writeObject(STAGED_FILE, stagedFileContents);
+        boolean changed = indexReplaced || !pendingChanges.isEmpty();
+        Collection<String> writtenStats;
+        if (indexReplaced
+                || journalLength + pendingChanges.size() > Math.max(MIN_JOURNAL_LENGTH_TO_MERGE, indexMap.size())) {
+            writeIndexFile();
+            writeContents(INDEX_JOURNAL_FILE, "");
+            journalLength = 0;
+            writtenStats = new ArrayList<>(statMap.keySet());
+            pendingChanges.clear();
+        } else {
+            writtenStats = new ArrayList<>();
+            for (String change : pendingChanges) {
+                if (change.startsWith("= ")) {
+                    writtenStats.add(change.split(" ", 6)[5]);
+                }
+            }
+            appendJournal();
+        }
+        if (changed) {
+            smudgeRacyEntries(writtenStats);
+            appendJournal();
+            rememberIndexFileStats();
+        }
+        indexReplaced = false;
+        FsMonitorUtils.saveValidFiles(statMap.keySet());
     }
 
     /**
-     * stages a file (note: if file wrong, it will throw exception) in indexMap and stagedFileContents
-     * @note this function will NOT save anything to disk, just keep them in memory
+     * racy-git smudging, like git. an entry whose file was modified at or after the index was written is not
+     * trusted (see getCachedSHA1()), but a later write moves indexWriteTime past it, and a change made in the same
+     * clock tick as the first write would never be seen. so such an entry is written again with size 0: its stat
+     * data never matches the file any more (an empty file has the same content anyway), and it is hashed again.
+     * @param fileNames the files whose stat data has just been written
      */
-    public static void stageFile(String fileName) {
-        // update: to save the space, we can just save sha1 in index map, and not really create the file object,
-        // but store the file in a map(staged) and save it. at commit, we create the object
-        String fileContents = readContentsAsString(join(CWD, fileName));
-        String fileSHA1 = sha1(fileContents);
-        indexMap.put(fileName, fileSHA1);
-        stagedFileContents.put(fileSHA1, fileContents); // save the file content in memory not disk
+    private static void smudgeRacyEntries(Collection<String> fileNames) {
+        long writeTime = Math.max(modifiedTime(INDEX_FILE), modifiedTime(INDEX_JOURNAL_FILE));
+        for (String fileName : fileNames) {
+            FileStat stat = statMap.get(fileName);
+            if (stat != null && stat.size != 0 && stat.modifiedTime >= writeTime && indexMap.containsKey(fileName)) {
+                putStat(fileName, new FileStat(0, stat.modifiedTime, stat.fileKey));
+            }
+        }
+    }
+
+    /**
+     * append pendingChanges to INDEX_JOURNAL_FILE and clear them
+     */
+    private static void appendJournal() {
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String change : pendingChanges) {
+            lines.append(change).append('\n');
+        }
+        try {
+            Files.write(INDEX_JOURNAL_FILE.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write index journal");
+        }
+        journalLength += pendingChanges.size();
+        pendingChanges.clear();
+    }
+
+    /**
+     * replace the whole index, for example, checkout makes the index the same as the fileVersionMap of a commit.
+     * stat data is kept for the files whose version does not change.
+     * @note this function will NOT save the index to disk, just keep it in memory
+     */
+    public static void resetIndex(HashMap<String, String> fileVersionMap) {
+        HashMap<String, FileStat> keptStats = new HashMap<>();
+        for (String fileName : fileVersionMap.keySet()) {
+            if (statMap.containsKey(fileName) && fileVersionMap.get(fileName).equals(indexMap.get(fileName))) {
+                keptStats.put(fileName, statMap.get(fileName));
+            }
+        }
+        indexMap = new HashMap<>(fileVersionMap); // never share the map with a commit
+        statMap = keptStats;
+        pendingChanges.clear();
+        indexReplaced = true;
+    }
+
+    /**
+     * stages files (note: if a file is wrong, it will throw exception) in indexMap
+     * @note this function will NOT save the index to disk, just keep it in memory
+     * update: a file whose stat data shows it is unchanged is skipped. the others are read on all cores: a file in
+     * the index is hashed first and stored only if it differs (re-adding unchanged files is common), a new file is
+     * streamed into a blob in the staging area right away (hashed and compressed in one pass). then indexMap is
+     * updated in this thread, it is not thread-safe.
+     */
+    public static void stageFiles(Collection<String> fileNames) {
+        if (!STAGING_DIR.exists()) {
+            STAGING_DIR.mkdir();
+        }
+        List<String> changedFiles = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (!indexMap.containsKey(fileName) || getCachedSHA1(fileName) == null) {
+                changedFiles.add(fileName);
+            }
+        }
+        List<StagedFile> stagedFiles = changedFiles.parallelStream()
+                .map(StagedFile::new)
+                .collect(Collectors.toList());
+        for (StagedFile stagedFile : stagedFiles) {
+            if (stagedFile.fileSHA1.equals(indexMap.get(stagedFile.fileName))) {
+                refreshStat(stagedFile.fileName, stagedFile.stat, stagedFile.fileSHA1);
+                continue;
+            }
+            indexMap.put(stagedFile.fileName, stagedFile.fileSHA1);
+            putStat(stagedFile.fileName, stagedFile.stat);
+            FsMonitorUtils.markVerified(stagedFile.fileName);
+        }
+    }
+
+    /**
+     * stage files which have just been written to CWD with committed versions (for example, by merge),
+     * nothing is read or hashed since the versions are known.
+     * @note this function will NOT save the index to disk, just keep it in memory
+     * @param fileVersions file name --> version, the blob is in .gitlet/objects or a pack already
+     */
+    public static void stageVersions(Map<String, String> fileVersions) {
+        for (Map.Entry<String, String> entry : fileVersions.entrySet()) {
+            indexMap.put(entry.getKey(), entry.getValue());
+            putStat(entry.getKey(), FileStat.of(join(CWD, entry.getKey())));
+            FsMonitorUtils.markVerified(entry.getKey());
+        }
+    }
+
+    /** a file read by a worker of stageFiles(), with its stat data taken before it was read */
+    private static class StagedFile {
+        final String fileName;
+        final FileStat stat;
+        final String fileSHA1;
+
+        StagedFile(String fileName) {
+            File file = join(CWD, fileName);
+            this.fileName = fileName;
+            this.stat = FileStat.of(file);
+            String knownSHA1 = indexMap.get(fileName);
+            String fileSHA1 = knownSHA1 == null ? null : ObjectUtils.hashFile(file);
+            if (fileSHA1 == null || !fileSHA1.equals(knownSHA1)) {
+                fileSHA1 = ObjectUtils.writeObject(STAGING_DIR, PACKS_DIR, ObjectUtils.BLOB, file);
+            }
+            this.fileSHA1 = fileSHA1;
+        }
     }
 
     /***
      * unstage a file in memory
      * @note this function will NOT save anything to disk, just keep them in memory
-     * @note there maybe redundant entry in stagedFileContents, but it will finally be cleared once commit.
+     * @note there maybe redundant blob in the staging area, but it will finally be cleared once commit.
      */
     public static void unstageFile(String fileName) {
-        String fileSHA1 = sha1(indexMap.get(fileName));
-        stagedFileContents.remove(fileSHA1);
         indexMap.remove(fileName);
+        statMap.remove(fileName);
+        pendingChanges.add("- " + fileName);
+    }
+
+    /**
+     * ask the stat cache for the version of a file in CWD, so an unchanged file will not be hashed again.
+     * the stat data of an entry is "racy" if the file was modified at or after the index was written:
+     * it may be modified again in the same clock tick without changing its stat data, so it must be hashed.
+     * a file which fsmonitor tells unchanged since its stat data was checked needs no stat at all.
+     * @return the version (sha1) of the file if its stat data is unchanged, or null if it must be hashed
+     */
+    public static String getCachedSHA1(String fileName) {
+        FileStat cachedStat = statMap.get(fileName);
+        if (cachedStat == null || cachedStat.modifiedTime >= indexWriteTime) {
+            return null;
+        }
+        if (FsMonitorUtils.isTrusted(fileName)) {
+            return indexMap.get(fileName);
+        }
+        if (!cachedStat.sameAs(FileStat.of(join(CWD, fileName)))) {
+            return null;
+        }
+        FsMonitorUtils.markVerified(fileName);
+        return indexMap.get(fileName);
+    }
+
+    /**
+     * record the stat data of a file in CWD whose version is known to be fileSHA1 (for example, it has just been
+     * hashed or written by checkout). it is recorded only if fileSHA1 is the version in indexMap.
+     * @param stat stat data taken before the file was hashed or after it was written
+     */
+    public static void refreshStat(String fileName, FileStat stat, String fileSHA1) {
+        if (stat == null || !fileSHA1.equals(indexMap.get(fileName))) {
+            return;
+        }
+        FsMonitorUtils.markVerified(fileName);
+        if (!stat.sameAs(statMap.get(fileName))) {
+            putStat(fileName, stat);
+        }
     }
 
+    /**
+     * record the stat data of files which have just been written to CWD with their versions in indexMap
+     */
+    public static void refreshStats(Collection<String> fileNames) {
+        for (String fileName : fileNames) {
+            refreshStat(fileName, FileStat.of(join(CWD, fileName)), indexMap.get(fileName));
+        }
+    }
+
+    private static void putStat(String fileName, FileStat stat) {
+        String fileSHA1 = indexMap.get(fileName);
+        if (stat == null) {
+            statMap.remove(fileName);
+            pendingChanges.add("+ " + fileSHA1 + " " + fileName);
+            return;
+        }
+        statMap.put(fileName, stat);
+        pendingChanges.add("= " + fileSHA1 + " " + stat.size + " " + stat.modifiedTime + " "
+                + stat.fileKey + " " + fileName);
+    }
+
+    /**
+     * move a staged blob to .gitlet/objects, it is called by commit for every changed file.
+     * if the blob is not in the staging area, it has been committed before, then nothing will be done.
+     */
+    public static void commitStagedFile(String fileSHA1) {
+        if (ObjectUtils.looseFile(STAGING_DIR, fileSHA1).exists()) {
+            ObjectUtils.moveObject(STAGING_DIR, OBJECTS_DIR, PACKS_DIR, ObjectUtils.BLOB, fileSHA1);
+        }
+    }
+
+    /**
+     * delete all blobs left in the staging area, after commit or checkout nothing is staged.
+     */
+    public static void clearStagingArea() {
+        for (String stagedBlob : ObjectUtils.looseIds(STAGING_DIR)) {
+            ObjectUtils.deleteLooseObject(STAGING_DIR, stagedBlob);
+        }
+    }
+
+    /**
+     * INDEX_FILE with all lines of INDEX_JOURNAL_FILE applied, it also reads the stat data into statMap
+     */
     public static HashMap<String, String> readIndex() {
-        return hashMapRead(INDEX_FILE);
+        HashMap<String, String> result = readIndexFile();
+        journalLength = 0;
+        indexWriteTime = Math.max(modifiedTime(INDEX_FILE), modifiedTime(INDEX_JOURNAL_FILE));
+        if (!INDEX_JOURNAL_FILE.exists()) {
+            return result;
+        }
+        for (String line : readContentsAsString(INDEX_JOURNAL_FILE).split("\n")) {
+            if (line.startsWith("= ")) {
+                String[] split = line.split(" ", 6);
+                result.put(split[5], split[1]);
+                statMap.put(split[5], new FileStat(Long.parseLong(split[2]), Long.parseLong(split[3]), split[4]));
+            } else if (line.startsWith("+ ")) {
+                String[] split = line.split(" ", 3);
+                result.put(split[2], split[1]);
+                statMap.remove(split[2]);
+            } else if (line.startsWith("- ")) {
+                result.remove(line.substring(2));
+                statMap.remove(line.substring(2));
+            } else {
+                continue;
+            }
+            journalLength++;
+        }
+        return result;
+    }
+
+    /**
+     * INDEX_FILE layout: [magic][version][count], then count entries of
+     * [file name][sha1 (20 bytes)][has stat data (1 byte)] and [size][modified time][file key] if it has stat data.
+     * an INDEX_FILE written by older versions is a serialized HashMap, it is still readable (with no stat data).
+     */
+    private static HashMap<String, String> readIndexFile() {
+        statMap = new HashMap<>();
+        if (INDEX_FILE.length() < 4) {
+            return new HashMap<>();
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(INDEX_FILE.toPath())))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                return hashMapRead(INDEX_FILE);
+            }
+            if (in.readInt() != INDEX_VERSION) {
+                throw new RuntimeException("unknown index version");
+            }
+            int count = in.readInt();
+            HashMap<String, String> result = new HashMap<>();
+            byte[] id = new byte[UID_LENGTH / 2];
+            for (int i = 0; i < count; ++i) {
+                String fileName = in.readUTF();
+                in.readFully(id);
+                result.put(fileName, toHex(id));
+                if (in.readBoolean()) {
+                    statMap.put(fileName, new FileStat(in.readLong(), in.readLong(), in.readUTF()));
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read index");
+        }
+    }
+
+    private static void writeIndexFile() {
+        File tempFile = join(GITLET_DIR, "index.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(indexMap.size());
+            for (Map.Entry<String, String> entry : indexMap.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.write(fromHex(entry.getValue()));
+                FileStat stat = statMap.get(entry.getKey());
+                out.writeBoolean(stat != null);
+                if (stat != null) {
+                    out.writeLong(stat.size);
+                    out.writeLong(stat.modifiedTime);
+                    out.writeUTF(stat.fileKey);
+                }
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to write index");
+        }
+        try {
+            Files.move(tempFile.toPath(), INDEX_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write index");
+        }
     }
 
-    public static HashMap<String, String> readStagedContents() {
-        return hashMapRead(STAGED_FILE);
+    private static long modifiedTime(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * older versions kept the contents of staged files in STAGED_FILE (sha1 --> contents) and read all of them
+     * for every command. they are moved to the staging area once, then STAGED_FILE is deleted.
+     */
+    private static void migrateStagedContents() {
+        if (!STAGED_FILE.exists()) {
+            return;
+        }
+        if (!STAGING_DIR.exists()) {
+            STAGING_DIR.mkdir();
+        }
+        HashMap<String, String> stagedFileContents = hashMapRead(STAGED_FILE);
+        for (String fileContents : stagedFileContents.values()) {
+            ObjectUtils.writeObject(STAGING_DIR, PACKS_DIR, ObjectUtils.BLOB,
+                    fileContents.getBytes(StandardCharsets.UTF_8));
+        }
+        STAGED_FILE.delete();
     }
 
     /***
-     * helper function for readIndex and readStagedContents
+     * helper function for readIndex
      */
     public static HashMap<String, String> hashMapRead(File file) {
         if (file.length() == 0) {
@@ -141,67 +556,4 @@ public class IndexUtils {
         assert fileName != null && commit != null;
         return commit.getFileVersionMap().containsKey(fileName) && !indexMap.containsKey(fileName);
     }
-
-    /**
-     * ("Untracked Files") is for files present in the working directory but neither staged for addition nor tracked.
-     * @note may be this method should be implemented in CommitUtils
-     */
-    public static List<String> getUntrackedFiles(Commit commit) {
-        List<String> CWDFileNames = plainFilenamesIn(CWD);
-        List<String> result = new LinkedList<>();
-        assert CWDFileNames != null;
-        for (String fileName : CWDFileNames) {
-            if (!isStaged(fileName, commit) && !CommitUtils.isTrackedByCommit(commit, fileName)) {
-                result.add(fileName);
-            }
-        }
-        return result;
-    }
-
-    /**
-     * "modified but not staged"
-     * Staged for addition, but with different contents than in the working directory; (modified) or
-     * Tracked in the current commit, changed in the working directory, but not staged; (deleted) or
-     * Staged for addition, but deleted in the working directory; or
-     * Not staged for removal, but tracked in the current commit and deleted from the working directory.
-     * @return modifiedNotStagedForCommit file name list
-     */
-    public static List<StringBuffer> modifiedNotStagedForCommit(Commit commit) {
-        List<String> CWDFileNames = plainFilenamesIn(CWD);
-        List<StringBuffer> result = new LinkedList<>();
-        assert CWDFileNames != null;
-        for (String fileName : CWDFileNames) {
-            boolean fileIsStaged = isStaged(fileName, commit);
-            boolean fileIsTracked = CommitUtils.isTrackedByCommit(commit, fileName);
-            if ((fileIsStaged && !FileUtils.hasSameSHA1(fileName, indexMap.get(fileName))) ||
-                    (fileIsTracked && !FileUtils.hasSameSHA1(fileName, commit.getFileVersionMap().get(fileName)) && !fileIsStaged)) {
-                result.add(new StringBuffer(fileName));
-            }
-        }
-        return result;
-    }
-
-    /**
-     * Staged for addition, but deleted in the working directory; or
-     * Not staged for removal, but tracked in the current commit and deleted from the working directory.
-     * @return deletedNotStagedForCommit file name list
-     */
-    public static List<StringBuffer> deletedNotStagedForCommit(Commit commit) {
-        List<String> CWDFileNames = plainFilenamesIn(CWD);
-        assert CWDFileNames != null;
-        List<StringBuffer> result = new LinkedList<>();
-        List<String> stagedFiles = getStagedFiles(commit);
-        for (String fileName : stagedFiles) {
-            if (!CWDFileNames.contains(fileName)) {
-                result.add(new StringBuffer(fileName));
-            }
-        }
-        HashMap<String, String> fileVersionMap = commit.getFileVersionMap();
-        for (String fileName : fileVersionMap.keySet()) {
-            if (!CWDFileNames.contains(fileName) && !isRemoval(fileName, commit)) {
-                result.add(new StringBuffer(fileName));
-            }
-        }
-        return result;
-    }
 }
@@ -30,6 +30,15 @@ public class Main {
             System.out.println("Please enter a command.");
             return;
         }
+        // global options come before the command, e.g. java gitlet.Main -v checkout master
+        if (args[0].equals("-v") || args[0].equals("--verbose")) {
+            Repository.verbose = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+            if (args.length == 0) {
+                System.out.println("Please enter a command.");
+                return;
+            }
+        }
         String firstArg = args[0];
         String[] restArgs = Arrays.copyOfRange(args, 1, args.length);
         switch(firstArg) {
@@ -41,7 +50,7 @@ public class Main {
                 }
                 break;
             case "add":
-                commandRunner(restArgs.length == 1, Repository::add, restArgs[0]);
+                commandRunner(restArgs.length >= 1, Repository::add, restArgs);
                 break;
             case "commit":
                 commandRunner(restArgs.length == 1, Repository::commit, restArgs[0]);
@@ -50,7 +59,7 @@ public class Main {
                 commandRunner(restArgs.length == 1, Repository::rm, restArgs[0]);
                 break;
             case "log":
-                commandRunner(restArgs.length == 0, Repository::log);
+                commandRunner(true, Repository::log, restArgs);
                 break;
             case "global-log":
                 commandRunner(restArgs.length == 0, Repository::globalLog);
@@ -62,7 +71,7 @@ public class Main {
                 commandRunner(restArgs.length == 1, Repository::branch, restArgs[0]);
                 break;
             case "find":
-                commandRunner(restArgs.length == 1, Repository::find, restArgs[0]);
+                commandRunner(restArgs.length == 1 || restArgs.length == 2, Repository::find, restArgs);
                 break;
             case "status":
                 commandRunner(restArgs.length == 0, Repository::status);
@@ -91,6 +100,25 @@ public class Main {
             case "pull":
                 commandRunner(restArgs.length == 2, RemoteUtils::pull, restArgs[0], restArgs[1]);
                 break;
+            case "diff":
+                commandRunner(true, DiffUtils::diff, restArgs);
+                break;
+            case "grep":
+                commandRunner(restArgs.length >= 1, GrepUtils::grep, restArgs);
+                break;
+            case "repack":
+                commandRunner(restArgs.length == 0, Repository::repack);
+                break;
+            case "migrate":
+                commandRunner(restArgs.length == 0, Repository::migrate);
+                break;
+            case "fsmonitor":
+                commandRunner(restArgs.length <= 1, FsMonitorUtils::fsmonitor, restArgs);
+                break;
+            case "serve":
+                // commands served may be init, so the directory does not have to be initialized
+                ServeUtils.serve(restArgs);
+                break;
             case "test":
                 break;
             default:
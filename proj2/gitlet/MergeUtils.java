@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 20:30
+ * @Description three-way merge of the lines of a file, like diff3.
+ * both sides are compared with the base (the file in the split point) by DiffUtils, the regions changed by
+ * the two sides are then walked in the order of the base lines:
+ * a region changed by one side only takes the lines of that side, regions of the two sides which overlap
+ * (or touch) are one conflict, unless both sides made the same change there.
+ * the lines between two conflicts are merged cleanly, so only the overlapping hunks are wrapped in markers.
+ */
+public class MergeUtils {
+    private static final byte[] CURRENT_MARKER = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR_MARKER = "=======\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BRANCH_MARKER = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** the merged content of a file */
+    public static class MergeResult {
+        public final byte[] content;
+        /** true if some lines are wrapped in conflict markers */
+        public final boolean conflicted;
+
+        MergeResult(byte[] content, boolean conflicted) {
+            this.content = content;
+            this.conflicted = conflicted;
+        }
+    }
+
+    /**
+     * merge a file changed on both sides.
+     * if a side deleted the file or one version is binary, the whole files are one conflict (as before),
+     * a side which does not have the file is empty in it.
+     * @param base null if the split point does not have the file (both sides added it), the base is empty then
+     * @param current null if the current commit does not have the file
+     * @param branch null if the given branch does not have the file
+     */
+    public static MergeResult mergeFile(byte[] base, byte[] current, byte[] branch) {
+        if (current == null || branch == null
+                || DiffUtils.isBinary(base) || DiffUtils.isBinary(current) || DiffUtils.isBinary(branch)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.writeBytes(CURRENT_MARKER);
+            out.writeBytes(current == null ? new byte[0] : current);
+            out.writeBytes(SEPARATOR_MARKER);
+            out.writeBytes(branch == null ? new byte[0] : branch);
+            out.writeBytes(BRANCH_MARKER);
+            return new MergeResult(out.toByteArray(), true);
+        }
+        return merge3(base, current, branch);
+    }
+
+    /**
+     * merge the lines of current and branch which both come from base
+     */
+    public static MergeResult merge3(byte[] base, byte[] current, byte[] branch) {
+        DiffUtils.Lines[] lines = DiffUtils.splitLines(base, current, branch);
+        DiffUtils.Lines baseLines = lines[0];
+        List<int[]> currentEdits = collectEdits(baseLines, lines[1]);
+        List<int[]> branchEdits = collectEdits(baseLines, lines[2]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(current.length, branch.length));
+        boolean conflicted = false;
+        int basePosition = 0;
+        // a line of base which no side changed is line (i + shift) of that side
+        int currentShift = 0;
+        int branchShift = 0;
+        int i = 0;
+        int j = 0;
+        while (i < currentEdits.size() || j < branchEdits.size()) {
+            // a chunk starts with the first region left, then takes every region of both sides it overlaps or touches
+            boolean currentFirst = j == branchEdits.size()
+                    || (i < currentEdits.size() && currentEdits.get(i)[0] <= branchEdits.get(j)[0]);
+            int chunkStart = currentFirst ? currentEdits.get(i)[0] : branchEdits.get(j)[0];
+            int chunkEnd = chunkStart;
+            int firstCurrent = i;
+            int firstBranch = j;
+            while (true) {
+                if (i < currentEdits.size() && currentEdits.get(i)[0] <= chunkEnd) {
+                    chunkEnd = Math.max(chunkEnd, currentEdits.get(i++)[1]);
+                } else if (j < branchEdits.size() && branchEdits.get(j)[0] <= chunkEnd) {
+                    chunkEnd = Math.max(chunkEnd, branchEdits.get(j++)[1]);
+                } else {
+                    break;
+                }
+            }
+            writeLines(out, baseLines, basePosition, chunkStart);
+
+            int[] currentRange = sideRange(currentEdits, firstCurrent, i, chunkStart, chunkEnd, currentShift);
+            int[] branchRange = sideRange(branchEdits, firstBranch, j, chunkStart, chunkEnd, branchShift);
+            if (firstBranch == j) { // changed by current only
+                writeLines(out, lines[1], currentRange[0], currentRange[1]);
+            } else if (firstCurrent == i) { // changed by branch only
+                writeLines(out, lines[2], branchRange[0], branchRange[1]);
+            } else if (sameLines(lines[1], currentRange, lines[2], branchRange)) {
+                writeLines(out, lines[1], currentRange[0], currentRange[1]);
+            } else {
+                conflicted = true;
+                out.writeBytes(CURRENT_MARKER);
+                writeConflictLines(out, lines[1], currentRange[0], currentRange[1]);
+                out.writeBytes(SEPARATOR_MARKER);
+                writeConflictLines(out, lines[2], branchRange[0], branchRange[1]);
+                out.writeBytes(BRANCH_MARKER);
+            }
+            currentShift = currentRange[1] - chunkEnd;
+            branchShift = branchRange[1] - chunkEnd;
+            basePosition = chunkEnd;
+        }
+        writeLines(out, baseLines, basePosition, baseLines.size());
+        return new MergeResult(out.toByteArray(), conflicted);
+    }
+
+    /**
+     * @return the regions of target which differ from base, as {baseStart, baseEnd, targetStart, targetEnd}
+     */
+    private static List<int[]> collectEdits(DiffUtils.Lines base, DiffUtils.Lines target) {
+        List<int[]> edits = new ArrayList<>();
+        DiffUtils.diff(base.ids, target.ids,
+                (oldStart, oldEnd, newStart, newEnd) -> edits.add(new int[]{oldStart, oldEnd, newStart, newEnd}));
+        return edits;
+    }
+
+    /**
+     * @param edits regions [from, to) of one side are in the chunk
+     * @param shift the shift of the base lines before the chunk
+     * @return the lines [start, end) of the side which replace base lines [chunkStart, chunkEnd)
+     */
+    private static int[] sideRange(List<int[]> edits, int from, int to, int chunkStart, int chunkEnd, int shift) {
+        if (from == to) {
+            return new int[]{chunkStart + shift, chunkEnd + shift};
+        }
+        int[] first = edits.get(from);
+        int[] last = edits.get(to - 1);
+        return new int[]{first[2] - (first[0] - chunkStart), last[3] + (chunkEnd - last[1])};
+    }
+
+    private static boolean sameLines(DiffUtils.Lines a, int[] aRange, DiffUtils.Lines b, int[] bRange) {
+        if (aRange[1] - aRange[0] != bRange[1] - bRange[0]) {
+            return false;
+        }
+        for (int k = 0; k < aRange[1] - aRange[0]; ++k) {
+            if (a.ids[aRange[0] + k] != b.ids[bRange[0] + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeLines(ByteArrayOutputStream out, DiffUtils.Lines lines, int from, int to) {
+        if (from < to) {
+            out.write(lines.content, lines.starts[from], lines.starts[to] - lines.starts[from]);
+        }
+    }
+
+    /** the lines in a conflict, a marker after a last line without '\n' still starts a new line */
+    private static void writeConflictLines(ByteArrayOutputStream out, DiffUtils.Lines lines, int from, int to) {
+        writeLines(out, lines, from, to);
+        if (from < to && !lines.endsWithNewline(to - 1)) {
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 11:03
+ * @Description storage format of commits and blobs, for both loose files and pack entries.
+ * an object is stored as deflate([type] [length]\0[content]), for example deflate("blob 12\0hello gitlet"),
+ * and its id is still the sha-1 of [content] only, so ids do not change with the storage format.
+ * a tree is the exception: its id is the sha-1 of [type] [length]\0[content], like git's ids, because trees share
+ * .gitlet/objects with blobs and the content of a tree may be the content of a file (the empty tree is the empty
+ * file). see objectId(). an object which is there already is never written again, so the type of the stored
+ * object is checked first, and an object of another type is an error instead of a silently shared file.
+ * objects written before compression was added are stored as raw [content]. they are recognized
+ * because they can not be inflated, and they are read as they are. an object which is inflated but has
+ * the header of another type is an error.
+ * <p>
+ * every function here takes the loose directory (e.g. .gitlet/objects) and the packs directory,
+ * so the same code reads the local repository and a remote repository.
+ * <p>
+ * a loose object is stored in a fan-out subdirectory named by the first two hex digits of its id,
+ * like git's objects/ab/cdef..., so no directory grows past 1/256 of the objects. see looseFile().
+ */
+public class ObjectUtils {
+    public static final String BLOB = "blob";
+    public static final String COMMIT = "commit";
+    /** a directory, see TreeUtils. trees are stored with blobs in .gitlet/objects */
+    public static final String TREE = "tree";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** length of the name of a fan-out subdirectory */
+    private static final int SHARD_LENGTH = 2;
+    /** a header is "commit " + at most 19 digits + '\0' */
+    private static final int MAX_HEADER_LENGTH = 32;
+
+    /**
+     * @return true if the object is stored loosely in dir or in a pack of packsDir
+     */
+    public static boolean hasObject(File dir, File packsDir, String id) {
+        return PackUtils.hasObject(packsDir, id) || looseFile(dir, id).exists();
+    }
+
+    /**
+     * hasObject() for deduplication: an object of the same id but another type is never taken for this one
+     * @throws IllegalArgumentException if the object exists with another type
+     */
+    public static boolean hasObject(File dir, File packsDir, String type, String id) {
+        if (!hasObject(dir, packsDir, id)) {
+            return false;
+        }
+        closeQuietly(openObject(dir, packsDir, type, id)); // the header is checked here
+        return true;
+    }
+
+    /**
+     * the only place which decides where a loose object is: [dir]/[first two hex digits]/[the other 38 digits].
+     * objects written before the fan-out subdirectories are directly in dir, they are still found until
+     * migrate moves them, see migrateLooseObjects().
+     */
+    public static File looseFile(File dir, String id) {
+        if (id.length() <= SHARD_LENGTH) {
+            return join(dir, id);
+        }
+        File shardedFile = shardedFile(dir, id);
+        if (!shardedFile.exists()) {
+            File flatFile = join(dir, id);
+            if (flatFile.exists()) {
+                return flatFile;
+            }
+        }
+        return shardedFile;
+    }
+
+    /**
+     * ids of all loose objects in dir, both in fan-out subdirectories and directly in dir.
+     * temporary files are skipped, their names are never 40 characters long.
+     */
+    public static List<String> looseIds(File dir) {
+        List<String> result = new ArrayList<>();
+        File[] shards = dir.listFiles(file -> file.isDirectory() && file.getName().matches("[0-9a-f]{2}"));
+        if (shards != null) {
+            for (File shard : shards) {
+                List<String> fileNames = plainFilenamesIn(shard);
+                for (String fileName : fileNames == null ? new ArrayList<String>() : fileNames) {
+                    if (fileName.length() == UID_LENGTH - SHARD_LENGTH) {
+                        result.add(shard.getName() + fileName);
+                    }
+                }
+            }
+        }
+        List<String> flatIds = plainFilenamesIn(dir);
+        for (String id : flatIds == null ? new ArrayList<String>() : flatIds) {
+            if (id.length() == UID_LENGTH) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    public static void deleteLooseObject(File dir, String id) {
+        looseFile(dir, id).delete();
+    }
+
+    /**
+     * move the loose objects directly in dir into their fan-out subdirectories, it is done by migrate command.
+     * @return the number of objects moved
+     */
+    public static int migrateLooseObjects(File dir) {
+        List<String> flatIds = plainFilenamesIn(dir);
+        if (flatIds == null) {
+            return 0;
+        }
+        int moved = 0;
+        for (String id : flatIds) {
+            if (id.length() != UID_LENGTH) {
+                continue;
+            }
+            File shardedFile = shardedFile(dir, id);
+            if (shardedFile.exists()) {
+                join(dir, id).delete(); // the same id has the same content
+            } else {
+                moveTo(join(dir, id), shardedFile);
+            }
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * @return id of an object: sha-1 of the content, or sha-1 of the header and the content for a tree
+     */
+    public static String objectId(String type, byte[] content) {
+        if (!type.equals(TREE)) {
+            return sha1(content);
+        }
+        return sha1(type + " " + content.length + "\0", content);
+    }
+
+    /**
+     * store content as a compressed object in dir, do nothing if the object already exists
+     * @return id of the object, see objectId()
+     */
+    public static String writeObject(File dir, File packsDir, String type, byte[] content) {
+        String id = objectId(type, content);
+        if (hasObject(dir, packsDir, type, id)) {
+            return id;
+        }
+        File tempFile = tempFile(dir);
+        try (OutputStream out = new DeflaterOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            writeHeader(out, type, content.length);
+            out.write(content);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to write object " + id);
+        }
+        moveTo(tempFile, shardedFile(dir, id));
+        return id;
+    }
+
+    /**
+     * store the contents of source as a compressed object in dir.
+     * the file is read once by channel transfer: every buffer is hashed and deflated at the same time,
+     * so a large file is never held in memory.
+     * @return id of the object, sha-1 of the contents of source
+     */
+    public static String writeObject(File dir, File packsDir, String type, File source) {
+        File tempFile = tempFile(dir);
+        String id;
+        try (FileChannel in = FileChannel.open(source.toPath());
+             OutputStream out = new DeflaterOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), BUFFER_SIZE))) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long length = in.size();
+            writeHeader(out, type, length);
+            // the header is not a part of the id, so only the content goes through the digest
+            WritableByteChannel content = Channels.newChannel(new DigestOutputStream(out, md));
+            long position = 0;
+            while (position < length) {
+                long transferred = in.transferTo(position, length - position, content);
+                if (transferred <= 0) {
+                    throw new IOException("file changed while it was stored");
+                }
+                position += transferred;
+            }
+            id = toHex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to write object from " + source.getName());
+        }
+        if (hasObject(dir, packsDir, type, id)) {
+            tempFile.delete();
+        } else {
+            moveTo(tempFile, shardedFile(dir, id));
+        }
+        return id;
+    }
+
+    /**
+     * move a loose object from one directory to another (e.g. from the staging area to .gitlet/objects),
+     * it is just a rename, the object is not read (only the header of an object toDir has already).
+     */
+    public static void moveObject(File fromDir, File toDir, File toPacksDir, String type, String id) {
+        File source = looseFile(fromDir, id);
+        if (hasObject(toDir, toPacksDir, type, id)) {
+            source.delete();
+            return;
+        }
+        moveTo(source, shardedFile(toDir, id));
+    }
+
+    /**
+     * sha-1 of the contents of a file, read by a FileChannel in fixed-size buffers
+     */
+    public static String hashFile(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buffer) > 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+            return toHex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("failed to read " + file.getName());
+        }
+    }
+
+    /**
+     * write the content of a blob to target by channel transfer, it is inflated while it is written.
+     */
+    public static void restoreObject(File dir, File packsDir, String id, File target) {
+        try (InputStream in = openObject(dir, packsDir, BLOB, id);
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (in == null) {
+                throw new IllegalArgumentException("object " + id + " does not exist");
+            }
+            ReadableByteChannel content = Channels.newChannel(in);
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(content, position, BUFFER_SIZE)) > 0) {
+                position += transferred;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write " + target.getName());
+        }
+    }
+
+    /**
+     * read the whole content of an object. the header gives the exact length,
+     * so content is inflated straight into its final array.
+     * @return null if the object does not exist
+     */
+    public static byte[] readObject(File dir, File packsDir, String type, String id) {
+        ByteArrayInputStream delta = openDeltaObject(packsDir, type, id);
+        if (delta != null) {
+            return delta.readAllBytes();
+        }
+        InputStream stored = openStored(dir, packsDir, id);
+        if (stored == null) {
+            return null;
+        }
+        try (InputStream in = new InflaterInputStream(stored, new Inflater(), BUFFER_SIZE)) {
+            long length = readHeader(in, type, id);
+            byte[] content = in.readNBytes((int) length);
+            if (content.length != length) {
+                throw new IllegalArgumentException("object " + id + " is truncated");
+            }
+            return content;
+        } catch (ZipException | EOFException e) {
+            // not a compressed object, it is read as a legacy object below
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read object " + id);
+        }
+        try (InputStream in = openStored(dir, packsDir, id)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read object " + id);
+        }
+    }
+
+    /**
+     * open the content of an object as a stream, it is inflated while it is read.
+     * @return null if the object does not exist
+     */
+    public static InputStream openObject(File dir, File packsDir, String type, String id) {
+        ByteArrayInputStream delta = openDeltaObject(packsDir, type, id);
+        if (delta != null) {
+            return delta;
+        }
+        InputStream stored = openStored(dir, packsDir, id);
+        if (stored == null) {
+            return null;
+        }
+        InputStream in = new InflaterInputStream(stored, new Inflater(), BUFFER_SIZE);
+        try {
+            readHeader(in, type, id);
+            return in;
+        } catch (ZipException | EOFException e) {
+            // not a compressed object, it is opened as a legacy object below
+            closeQuietly(in);
+            return openStored(dir, packsDir, id);
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new RuntimeException("failed to read object " + id);
+        } catch (IllegalArgumentException e) {
+            closeQuietly(in);
+            throw e;
+        }
+    }
+
+    /**
+     * copy an object to another repository exactly as it is stored, it is never inflated or deflated again.
+     * @return the number of bytes copied, 0 if the target already has the object
+     */
+    public static long copyObject(File fromDir, File fromPacksDir, File toDir, File toPacksDir, String id) {
+        if (hasObject(toDir, toPacksDir, id)) {
+            return 0;
+        }
+        File tempFile = tempFile(toDir);
+        long copied;
+        try (InputStream in = openStored(fromDir, fromPacksDir, id)) {
+            if (in == null) {
+                throw new RuntimeException("object " + id + " does not exist");
+            }
+            copied = Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to copy object " + id);
+        }
+        moveTo(tempFile, shardedFile(toDir, id));
+        return copied;
+    }
+
+    /**
+     * an object stored as a delta in a pack is rebuilt by PackUtils already inflated, it is not compressed again
+     * @return the content after the header, or null if the object is not stored as a delta
+     */
+    private static ByteArrayInputStream openDeltaObject(File packsDir, String type, String id) {
+        byte[] object = PackUtils.readDeltaObject(packsDir, id);
+        if (object == null) {
+            return null;
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(object);
+        try {
+            readHeader(in, type, id);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read object " + id);
+        }
+        return in;
+    }
+
+    /**
+     * @return the stored bytes of the object (compressed or legacy), packs first, then the loose file
+     */
+    private static InputStream openStored(File dir, File packsDir, String id) {
+        InputStream packed = PackUtils.openObject(packsDir, id);
+        if (packed != null) {
+            return packed;
+        }
+        File looseFile = looseFile(dir, id);
+        if (looseFile.isFile()) {
+            try {
+                return new BufferedInputStream(Files.newInputStream(looseFile.toPath()), BUFFER_SIZE);
+            } catch (IOException e) {
+                throw new RuntimeException("failed to read object " + id);
+            }
+        }
+        return null;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // nothing to do with a failed close of a read-only stream
+        }
+    }
+
+    private static void writeHeader(OutputStream out, String type, long length) throws IOException {
+        out.write((type + " " + length).getBytes(StandardCharsets.UTF_8));
+        out.write(0);
+    }
+
+    /**
+     * read "[type] [length]\0" from an inflated stream
+     * @return length of the content
+     * @throws IOException (ZipException or EOFException) if the stream can not be inflated, e.g. a legacy object
+     * @throws IllegalArgumentException if the object is inflated but it is not an object of this type
+     */
+    private static long readHeader(InputStream in, String type, String id) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int b;
+        while ((b = in.read()) > 0) {
+            if (header.length() >= MAX_HEADER_LENGTH) {
+                throw new IllegalArgumentException("object " + id + " has no header");
+            }
+            header.append((char) b);
+        }
+        if (b < 0 || !header.toString().matches("[a-z]+ \\d+")) {
+            throw new IllegalArgumentException("object " + id + " has no header");
+        }
+        if (!header.toString().startsWith(type + " ")) {
+            throw new IllegalArgumentException("object " + id + " is a "
+                    + header.substring(0, header.indexOf(" ")) + ", not a " + type);
+        }
+        return Long.parseLong(header.substring(type.length() + 1));
+    }
+
+    /**
+     * objects are written to a temporary file and renamed, so an object file is always complete.
+     * the name is not 40 characters long, so it will never be taken as an id.
+     */
+    private static File tempFile(File dir) {
+        try {
+            return File.createTempFile("tmp-", ".obj", dir);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to create temporary file in " + dir.getName());
+        }
+    }
+
+    private static File shardedFile(File dir, String id) {
+        return join(dir, id.substring(0, SHARD_LENGTH), id.substring(SHARD_LENGTH));
+    }
+
+    /**
+     * rename a file to target, the fan-out subdirectory of target is created if it does not exist
+     */
+    private static void moveTo(File tempFile, File target) {
+        target.getParentFile().mkdirs();
+        try {
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("failed to save object " + target.getName());
+        }
+    }
+}
@@ -0,0 +1,675 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 10:12
+ * @Description packfile object store. a pack is a pair of files in .gitlet/packs:
+ * pack-[sha1].pack stores many objects one after another (append-only, never rewritten),
+ * pack-[sha1].idx stores the sorted object ids and their offsets in the pack.
+ * the idx file is memory-mapped and searched by binary search, so reading one object
+ * never lists a directory and never touches other objects.
+ * <p>
+ * pack layout: [magic][version][count] then count entries of [type(1 byte)][length(4 bytes)][data]
+ * idx layout:  [magic][version][count] then count records of [id(20 bytes)][type(1 byte)][offset(8 bytes)],
+ * records are sorted by id. [data] is exactly what a loose file of the object holds, see ObjectUtils.
+ * <p>
+ * update: an entry of type DELTA_TYPE holds [base id(20 bytes)][deflate(delta)] instead, the delta rebuilds the
+ * inflated object ([type] [length]\0[content]) from the inflated base, see DeltaUtils. the base is another object
+ * in the packs of the same directory, which may be a delta itself, but a chain is at most MAX_DELTA_DEPTH long.
+ * when loose objects are packed, every blob and tree is compared with the earlier versions of the same path
+ * (found by walking the trees of all commits, the oldest first), and stored as a delta if it is much smaller.
+ * bases read to resolve deltas are kept in baseCache, so reading many versions of a file reads each base once.
+ */
+public class PackUtils {
+    /** an object of .gitlet/objects, a blob or a tree */
+    public static final byte BLOB_TYPE = 1;
+    public static final byte COMMIT_TYPE = 2;
+    /** type of a pack entry stored as a delta, it is never the type of an idx record */
+    private static final byte DELTA_TYPE = 3;
+
+    private static final int PACK_MAGIC = 0x47504b31; // "GPK1"
+    private static final int IDX_MAGIC = 0x47494431; // "GID1"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 12;
+    private static final int ID_LENGTH = 20;
+    private static final int IDX_RECORD_LENGTH = ID_LENGTH + 1 + 8;
+    /** the max number of deltas to apply to read one object */
+    private static final int MAX_DELTA_DEPTH = 10;
+    /** the number of earlier versions of a path which an object is compared with */
+    private static final int DELTA_WINDOW = 10;
+    /** larger objects are always stored whole, they are not read into memory to find deltas */
+    private static final int MAX_DELTA_OBJECT_SIZE = 8 * 1024 * 1024;
+    /** the max total bytes of bases kept in baseCache */
+    private static final long BASE_CACHE_SIZE = 32L * 1024 * 1024;
+    /** a header is "commit " + at most 19 digits + '\0' */
+    private static final int MAX_HEADER_LENGTH = 32;
+
+    /** base id --> inflated base, objects never change, so a cached base is valid in any repository */
+    private static final LinkedHashMap<String, byte[]> baseCache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long baseCacheBytes = 0;
+
+    /** packs directory --> opened packs, so every idx will be mapped at most once in one command */
+    private static final Map<File, List<Pack>> openedPacks = new HashMap<>();
+
+    /** an opened pack, its idx is memory-mapped and its pack file is read by position */
+    private static class Pack {
+        File packFile;
+        MappedByteBuffer idx;
+        int count;
+    }
+
+    /** where an entry is, and its header */
+    private static class Location {
+        Pack pack;
+        long offset;
+        byte type;
+        int length;
+    }
+
+    /** an object which later objects of the same path may be stored as deltas against, see findDeltas() */
+    private static class Candidate {
+        final String id;
+        final boolean loose;
+        /** the inflated object, it is read when it is needed first */
+        byte[] object;
+        /** the length of the delta chain of the object, -1 if it is unknown yet */
+        int depth = -1;
+
+        Candidate(String id, boolean loose) {
+            this.id = id;
+            this.loose = loose;
+        }
+    }
+
+    /**
+     * stream the data of the object with this id from its pack, the data is never read into memory as a whole
+     * update: an object stored as a delta is rebuilt in memory and compressed again while it is read,
+     * use readDeltaObject() to get it without compressing it
+     * @return null if no pack in packsDir contains the object
+     */
+    public static InputStream openObject(File packsDir, String id) {
+        Location location = locate(packsDir, id);
+        if (location == null) {
+            return null;
+        }
+        if (location.type == DELTA_TYPE) {
+            return new DeflaterInputStream(new ByteArrayInputStream(resolve(packsDir, location)));
+        }
+        return openEntry(location);
+    }
+
+    /**
+     * @return the inflated object ([type] [length]\0[content]) if it is stored as a delta in a pack of packsDir,
+     * otherwise null
+     */
+    public static byte[] readDeltaObject(File packsDir, String id) {
+        Location location = locate(packsDir, id);
+        return location == null || location.type != DELTA_TYPE ? null : resolve(packsDir, location);
+    }
+
+    public static boolean hasObject(File packsDir, String id) {
+        byte[] key = idToBytes(id);
+        if (key == null) {
+            return false;
+        }
+        for (Pack pack : getPacks(packsDir)) {
+            if (search(pack, key) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param type BLOB_TYPE or COMMIT_TYPE
+     * @return all ids of this type in all packs of packsDir
+     */
+    public static List<String> packedIds(File packsDir, byte type) {
+        List<String> result = new LinkedList<>();
+        for (Pack pack : getPacks(packsDir)) {
+            for (int i = 0; i < pack.count; ++i) {
+                int offset = recordOffset(i);
+                if (pack.idx.get(offset + ID_LENGTH) == type) {
+                    result.add(bytesToId(pack.idx, offset));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * move all loose commits and loose objects of this repository into one new pack,
+     * then delete the loose files. nothing will be deleted before the pack and its idx are complete.
+     * @return the number of objects packed
+     */
+    public static int packLooseObjects() {
+        Map<String, File> looseFiles = new TreeMap<>();
+        Map<String, Byte> types = new HashMap<>();
+        collectLooseFiles(COMMITS_DIR, COMMIT_TYPE, looseFiles, types);
+        collectLooseFiles(OBJECTS_DIR, BLOB_TYPE, looseFiles, types);
+        if (looseFiles.isEmpty()) {
+            return 0;
+        }
+        Set<String> looseObjects = new HashSet<>();
+        for (Map.Entry<String, Byte> entry : types.entrySet()) {
+            if (entry.getValue() == BLOB_TYPE) {
+                looseObjects.add(entry.getKey());
+            }
+        }
+        Map<String, byte[]> deltas = findDeltas(looseObjects);
+        writePack(PACKS_DIR, looseFiles, types, deltas);
+        for (File looseFile : looseFiles.values()) {
+            looseFile.delete();
+        }
+        if (Repository.verbose) {
+            System.out.println(looseFiles.size() + " objects packed, " + deltas.size() + " stored as deltas.");
+        }
+        return looseFiles.size();
+    }
+
+    /**
+     * every loose object is compared with the DELTA_WINDOW versions of the same path before it,
+     * and the smallest delta is kept if it is less than half of the object.
+     * a base must have a chain shorter than MAX_DELTA_DEPTH, so no chain grows past it.
+     * @param looseObjects ids of the loose blobs and trees which will be packed
+     * @return object id --> entry data of its delta ([base id][deflate(delta)])
+     */
+    private static Map<String, byte[]> findDeltas(Set<String> looseObjects) {
+        Map<String, byte[]> result = new HashMap<>();
+        for (List<String> versions : pathVersions().values()) {
+            Deque<Candidate> window = new ArrayDeque<>();
+            for (String id : versions) {
+                boolean loose = looseObjects.contains(id);
+                if (!loose && !hasObject(PACKS_DIR, id)) {
+                    continue;
+                }
+                Candidate candidate = new Candidate(id, loose);
+                if (loose) {
+                    candidate.object = readCandidate(candidate);
+                    if (candidate.object == null) {
+                        continue;
+                    }
+                    candidate.depth = 0;
+                    Candidate bestBase = null;
+                    byte[] bestDelta = null;
+                    for (Candidate base : window) {
+                        if (depth(base) >= MAX_DELTA_DEPTH || readBaseCandidate(base) == null) {
+                            continue;
+                        }
+                        int maxSize = bestDelta == null ? candidate.object.length / 2 : bestDelta.length;
+                        byte[] delta = DeltaUtils.createDelta(base.object, candidate.object, maxSize);
+                        if (delta != null) {
+                            bestBase = base;
+                            bestDelta = delta;
+                        }
+                    }
+                    if (bestBase != null) {
+                        result.put(id, deltaEntry(bestBase.id, bestDelta));
+                        candidate.depth = bestBase.depth + 1;
+                    }
+                }
+                window.addLast(candidate);
+                if (window.size() > DELTA_WINDOW) {
+                    window.removeFirst();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the versions of every path, found in the trees (or the file maps of old commits) of all commits.
+     * commits are walked by commit time, so the versions of a path are in the order they were committed.
+     * @return path --> ids of the blobs (or trees for "dir/" paths) of the path
+     */
+    private static Map<String, List<String>> pathVersions() {
+        List<Commit> commits = new ArrayList<>();
+        for (String commitId : ObjectUtils.looseIds(COMMITS_DIR)) {
+            commits.add(CommitUtils.readCommit(commitId));
+        }
+        for (String commitId : packedIds(PACKS_DIR, COMMIT_TYPE)) {
+            commits.add(CommitUtils.readCommit(commitId));
+        }
+        commits.sort(Comparator.comparing(Commit::getCommitTime));
+        Map<String, String> paths = new LinkedHashMap<>();
+        for (Commit commit : commits) {
+            if (commit.getTreeId() != null) {
+                TreeUtils.collectPaths(commit.getTreeId(), "", paths);
+            } else {
+                for (Map.Entry<String, String> entry : new TreeMap<>(commit.getFileVersionMap()).entrySet()) {
+                    paths.putIfAbsent(entry.getValue(), entry.getKey());
+                }
+            }
+        }
+        Map<String, List<String>> result = new HashMap<>();
+        for (Map.Entry<String, String> entry : paths.entrySet()) {
+            result.computeIfAbsent(entry.getValue(), path -> new ArrayList<>()).add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * @return the inflated loose object, or null if it is too large or it is an old uncompressed object
+     */
+    private static byte[] readCandidate(Candidate candidate) {
+        File looseFile = ObjectUtils.looseFile(OBJECTS_DIR, candidate.id);
+        if (looseFile.length() > MAX_DELTA_OBJECT_SIZE) {
+            return null;
+        }
+        try {
+            return inflate(Files.readAllBytes(looseFile.toPath()));
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read object " + candidate.id);
+        }
+    }
+
+    /**
+     * read a base candidate when it is first compared with
+     * @return the inflated object, or null if it can not be a base
+     */
+    private static byte[] readBaseCandidate(Candidate base) {
+        if (base.object == null && !base.loose) {
+            Location location = locate(PACKS_DIR, base.id);
+            if (location.type == DELTA_TYPE) {
+                base.object = resolve(PACKS_DIR, location);
+            } else if (location.length <= MAX_DELTA_OBJECT_SIZE) {
+                base.object = inflate(readEntry(location));
+            }
+        }
+        return base.object;
+    }
+
+    /**
+     * @return the length of the delta chain of a candidate, a packed object is looked up when it is needed first
+     */
+    private static int depth(Candidate candidate) {
+        if (candidate.depth < 0) {
+            candidate.depth = 0;
+            Location location = locate(PACKS_DIR, candidate.id);
+            while (location.type == DELTA_TYPE) {
+                candidate.depth++;
+                location = locate(PACKS_DIR, bytesToId(ByteBuffer.wrap(readEntry(location)), 0));
+            }
+        }
+        return candidate.depth;
+    }
+
+    private static byte[] deltaEntry(String baseId, byte[] delta) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(idToBytes(baseId));
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(delta);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to compress delta");
+        }
+        return out.toByteArray();
+    }
+
+    private static void collectLooseFiles(File dir, byte type, Map<String, File> looseFiles, Map<String, Byte> types) {
+        for (String id : ObjectUtils.looseIds(dir)) {
+            File looseFile = ObjectUtils.looseFile(dir, id);
+            // an entry records its length in 4 bytes, larger objects just stay loose
+            if (looseFile.length() <= Integer.MAX_VALUE && !hasObject(PACKS_DIR, id)) {
+                looseFiles.put(id, looseFile);
+                types.put(id, type);
+            }
+        }
+    }
+
+    /**
+     * write entries to a new pack. entries are appended one by one, so the pack is never held in memory.
+     * the pack is written to a temporary file and renamed, the idx is renamed last,
+     * so a reader will never see a pack without a complete idx.
+     * @param sources id --> file which holds the data of the entry, it must be sorted by id
+     * @param deltas id --> data of the entry, for the objects stored as deltas (their files are not read)
+     */
+    private static void writePack(File packsDir, Map<String, File> sources, Map<String, Byte> types,
+                                  Map<String, byte[]> deltas) {
+        if (!packsDir.exists()) {
+            packsDir.mkdir();
+        }
+        String packName = "pack-" + sha1(new ArrayList<>(sources.keySet()).toString());
+        File tempPack = join(packsDir, packName + ".pack.tmp");
+        File tempIdx = join(packsDir, packName + ".idx.tmp");
+        try {
+            Map<String, Long> offsets = new HashMap<>();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempPack.toPath())))) {
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sources.size());
+                long offset = HEADER_LENGTH;
+                for (Map.Entry<String, File> entry : sources.entrySet()) {
+                    offsets.put(entry.getKey(), offset);
+                    byte[] delta = deltas.get(entry.getKey());
+                    if (delta != null) {
+                        out.writeByte(DELTA_TYPE);
+                        out.writeInt(delta.length);
+                        out.write(delta);
+                        offset += 1 + 4 + delta.length;
+                        continue;
+                    }
+                    long length = entry.getValue().length();
+                    out.writeByte(types.get(entry.getKey()));
+                    out.writeInt((int) length);
+                    Files.copy(entry.getValue().toPath(), out); // entries are stored as they are stored loosely
+                    offset += 1 + 4 + length;
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempIdx.toPath())))) {
+                out.writeInt(IDX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sources.size());
+                for (String id : sources.keySet()) { // TreeMap keeps ids sorted
+                    out.write(idToBytes(id));
+                    out.writeByte(types.get(id));
+                    out.writeLong(offsets.get(id));
+                }
+            }
+            Files.move(tempPack.toPath(), join(packsDir, packName + ".pack").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempIdx.toPath(), join(packsDir, packName + ".idx").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tempPack.delete();
+            tempIdx.delete();
+            throw new RuntimeException("failed to write pack " + packName);
+        }
+        openedPacks.remove(packsDir); // the new pack must be visible to later reads
+    }
+
+    /**
+     * forget the opened packs, packs written by another process will be seen when they are opened again.
+     * it is called before every command of ServeUtils.
+     */
+    public static synchronized void closePacks() {
+        openedPacks.clear();
+    }
+
+    /**
+     * open (and cache) all packs which have a complete idx in packsDir.
+     * it is synchronized because checkout reads objects from many threads, see FileUtils.restoreCWDFiles()
+     */
+    private static synchronized List<Pack> getPacks(File packsDir) {
+        List<Pack> packs = openedPacks.get(packsDir);
+        if (packs != null) {
+            return packs;
+        }
+        packs = new ArrayList<>();
+        List<String> fileNames = plainFilenamesIn(packsDir);
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (!fileName.endsWith(".idx")) {
+                    continue;
+                }
+                String packName = fileName.substring(0, fileName.length() - ".idx".length());
+                File packFile = join(packsDir, packName + ".pack");
+                if (packFile.exists()) {
+                    packs.add(openPack(join(packsDir, fileName), packFile));
+                }
+            }
+        }
+        openedPacks.put(packsDir, packs);
+        return packs;
+    }
+
+    private static Pack openPack(File idxFile, File packFile) {
+        try (RandomAccessFile file = new RandomAccessFile(idxFile, "r")) {
+            Pack pack = new Pack();
+            pack.packFile = packFile;
+            pack.idx = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (pack.idx.getInt(0) != IDX_MAGIC || pack.idx.getInt(4) != VERSION) {
+                throw new RuntimeException("bad pack index " + idxFile.getName());
+            }
+            pack.count = pack.idx.getInt(8);
+            return pack;
+        } catch (IOException e) {
+            throw new RuntimeException("failed to open pack index " + idxFile.getName());
+        }
+    }
+
+    /**
+     * binary search in the mapped idx
+     * @return position of the record, or -1 if not found
+     */
+    private static int search(Pack pack, byte[] key) {
+        int low = 0;
+        int high = pack.count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareId(pack.idx, recordOffset(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return where the entry of the object is, or null if no pack in packsDir contains the object
+     */
+    private static Location locate(File packsDir, String id) {
+        byte[] key = idToBytes(id);
+        if (key == null) {
+            return null;
+        }
+        for (Pack pack : getPacks(packsDir)) {
+            int position = search(pack, key);
+            if (position >= 0) {
+                Location location = new Location();
+                location.pack = pack;
+                location.offset = pack.idx.getLong(recordOffset(position) + ID_LENGTH + 1);
+                try (FileChannel channel = FileChannel.open(pack.packFile.toPath())) {
+                    ByteBuffer header = ByteBuffer.allocate(5);
+                    readFully(channel, header, location.offset);
+                    header.flip();
+                    location.type = header.get();
+                    location.length = header.getInt();
+                } catch (IOException e) {
+                    throw new RuntimeException("failed to read pack " + pack.packFile.getName());
+                }
+                return location;
+            }
+        }
+        return null;
+    }
+
+    private static InputStream openEntry(Location location) {
+        try {
+            FileChannel channel = FileChannel.open(location.pack.packFile.toPath());
+            return new EntryInputStream(channel, location.offset + 5, location.length);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read pack " + location.pack.packFile.getName());
+        }
+    }
+
+    private static byte[] readEntry(Location location) {
+        try (FileChannel channel = FileChannel.open(location.pack.packFile.toPath())) {
+            ByteBuffer data = ByteBuffer.allocate(location.length);
+            readFully(channel, data, location.offset + 5);
+            return data.array();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read pack " + location.pack.packFile.getName());
+        }
+    }
+
+    /**
+     * rebuild an object from its entry, applying the deltas of its chain to the bases
+     * @return the inflated object
+     */
+    private static byte[] resolve(File packsDir, Location location) {
+        byte[] data = readEntry(location);
+        if (location.type != DELTA_TYPE) {
+            byte[] object = inflate(data);
+            if (object == null) {
+                throw new RuntimeException("a delta base is not a compressed object");
+            }
+            return object;
+        }
+        String baseId = bytesToId(ByteBuffer.wrap(data), 0);
+        byte[] base = getCachedBase(baseId);
+        if (base == null) {
+            Location baseLocation = locate(packsDir, baseId);
+            if (baseLocation == null) {
+                throw new RuntimeException("delta base " + baseId + " does not exist");
+            }
+            base = resolve(packsDir, baseLocation);
+            cacheBase(baseId, base);
+        }
+        try (InputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(data, ID_LENGTH, data.length - ID_LENGTH))) {
+            return DeltaUtils.applyDelta(base, in.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read delta in pack " + location.pack.packFile.getName());
+        }
+    }
+
+    /**
+     * @return the inflated object ([type] [length]\0[content]), or null if data is not a compressed object
+     * (an object written before compression) or the object is larger than MAX_DELTA_OBJECT_SIZE
+     */
+    private static byte[] inflate(byte[] data) {
+        byte[] object;
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            object = in.readNBytes(MAX_DELTA_OBJECT_SIZE + 1);
+        } catch (IOException e) {
+            return null;
+        }
+        int end = 0;
+        while (end < object.length && end <= MAX_HEADER_LENGTH && object[end] != 0) {
+            end++;
+        }
+        if (end >= object.length || object.length > MAX_DELTA_OBJECT_SIZE) {
+            return null;
+        }
+        String header = new String(object, 0, end, StandardCharsets.UTF_8);
+        if (!header.matches("[a-z]+ \\d+") || Long.parseLong(header.substring(header.indexOf(' ') + 1))
+                != object.length - end - 1) {
+            return null;
+        }
+        return object;
+    }
+
+    private static synchronized byte[] getCachedBase(String id) {
+        return baseCache.get(id);
+    }
+
+    private static synchronized void cacheBase(String id, byte[] base) {
+        if (base.length > BASE_CACHE_SIZE || baseCache.containsKey(id)) {
+            return;
+        }
+        baseCache.put(id, base);
+        baseCacheBytes += base.length;
+        Iterator<byte[]> eldest = baseCache.values().iterator();
+        while (baseCacheBytes > BASE_CACHE_SIZE) {
+            baseCacheBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /** reads [length] bytes of a pack file from [position] by positional channel reads */
+    private static class EntryInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        EntryInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of pack");
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of pack");
+            }
+            position += read;
+        }
+    }
+
+    private static int recordOffset(int position) {
+        return HEADER_LENGTH + position * IDX_RECORD_LENGTH;
+    }
+
+    private static int compareId(ByteBuffer buffer, int offset, byte[] key) {
+        for (int i = 0; i < ID_LENGTH; ++i) {
+            int cmp = Integer.compare(buffer.get(offset + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return null if id is not a complete sha-1 (for example, a prefix)
+     */
+    private static byte[] idToBytes(String id) {
+        if (id.length() != UID_LENGTH || !id.matches("[0-9a-f]+")) {
+            return null;
+        }
+        return fromHex(id);
+    }
+
+    private static String bytesToId(ByteBuffer buffer, int offset) {
+        byte[] id = new byte[ID_LENGTH];
+        buffer.get(offset, id);
+        return toHex(id);
+    }
+}
@@ -3,6 +3,7 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
 
 import static gitlet.GitletConstants.*;
 import static gitlet.Utils.*;
@@ -20,10 +21,44 @@ import static gitlet.Utils.*;
 public class RemoteUtils {
     public static TreeMap<String, String> remoteLocationMap = new TreeMap<>();
 
-    static {
-        if (remoteRefsInitialized()) {
-            remoteLocationMap = readObject(REMOTE_FILE, TreeMap.class);
+    /**
+     * the commits and objects copied by one push or fetch, printed with -v
+     */
+    private static class Transfer {
+        int commits;
+        int objects;
+        long bytes;
+
+        void addCommit(long copied) {
+            if (copied > 0) {
+                commits += 1;
+                bytes += copied;
+            }
         }
+
+        void addObject(long copied) {
+            if (copied > 0) {
+                objects += 1;
+                bytes += copied;
+            }
+        }
+
+        void report(String done) {
+            if (Repository.verbose) {
+                System.out.println(commits + " commits and " + objects + " objects " + done + ", " + bytes + " bytes.");
+            }
+        }
+    }
+
+    static {
+        loadRemoteLocationMap();
+    }
+
+    /**
+     * read remote name --> location from REMOTE_FILE, it is also called before every command of ServeUtils
+     */
+    public static void loadRemoteLocationMap() {
+        remoteLocationMap = remoteRefsInitialized() ? readObject(REMOTE_FILE, TreeMap.class) : new TreeMap<>();
     }
 
     public static void saveRemoteLocationMap() {
@@ -62,20 +97,38 @@ public class RemoteUtils {
         return join(getRemoteGitletFolder(remoteName), "objects");
     }
 
-    public static void copyCommitFileToRemote(String commitId, String remoteName) {
+    public static File remotePacksFolder(String remoteName) {
+        return join(getRemoteGitletFolder(remoteName), "packs");
+    }
+
+    /**
+     * @param commit the commit of commitId, it is recorded in the commit-meta of the remote if it is copied
+     * @return the number of bytes copied, 0 if the remote already has the commit
+     */
+    public static long copyCommitFileToRemote(String commitId, Commit commit, String remoteName) {
         if (!isRemoteAdded(remoteName)) {
-            return;
+            return 0;
         }
-        File remoteCommitsFolder = remoteCommitsFolder(remoteName);
-        File remoteCommitFile = join(remoteCommitsFolder, commitId);
-        writeObject(remoteCommitFile, CommitUtils.readCommit(commitId));
+        long copied = ObjectUtils.copyObject(COMMITS_DIR, PACKS_DIR,
+                remoteCommitsFolder(remoteName), remotePacksFolder(remoteName), commitId);
+        if (copied > 0) {
+            CommitIdIndexUtils.addCommitId(getRemoteGitletFolder(remoteName), commitId);
+            CommitMetaUtils.addCommit(getRemoteGitletFolder(remoteName), commitId, commit);
+        }
+        return copied;
     }
 
-    public static void copyCommitFileFromRemote(String commitId, String remoteName) {
-        File remoteCommitsFolder = remoteCommitsFolder(remoteName);
-        File remoteCommitFile = join(remoteCommitsFolder, commitId);
-        Commit commit = readObject(remoteCommitFile, Commit.class);
-        CommitUtils.saveCommit(commit);
+    /**
+     * @return the number of bytes copied, 0 if the local repository already has the commit
+     */
+    public static long copyCommitFileFromRemote(String commitId, Commit commit, String remoteName) {
+        long copied = ObjectUtils.copyObject(remoteCommitsFolder(remoteName), remotePacksFolder(remoteName),
+                COMMITS_DIR, PACKS_DIR, commitId);
+        if (copied > 0) {
+            CommitIdIndexUtils.addCommitId(GITLET_DIR, commitId);
+            CommitMetaUtils.addCommit(GITLET_DIR, commitId, commit);
+        }
+        return copied;
     }
 
     public static void copyBranchFileToRemote(String branchName, String remoteName) {
@@ -91,18 +144,111 @@ public class RemoteUtils {
         writeContents(remoteBrancheFile, branchContent);
     }
 
+    /**
+     * objects are copied as they are stored (compressed), and never copied if the target already has them
+     */
     public static void copyObjectsFileToRemote(String fileSHA1, String remoteName) {
-        String fileContent = FileUtils.getFileContent(fileSHA1);
-        File remoteObjectsFolder = remoteObjectsFolder(remoteName);
-        File remoteObjectFile = join(remoteObjectsFolder, fileSHA1);
-        writeContents(remoteObjectFile, fileContent);
+        ObjectUtils.copyObject(OBJECTS_DIR, PACKS_DIR,
+                remoteObjectsFolder(remoteName), remotePacksFolder(remoteName), fileSHA1);
     }
 
     public static void copyObjectsFileFromRemote(String fileSHA1, String remoteName) {
-        File remoteObjectsFolder = remoteObjectsFolder(remoteName);
-        File remoteObjectFile = join(remoteObjectsFolder, fileSHA1);
-        String fileContent = readContentsAsString(remoteObjectFile);
-        FileUtils.writeGitletObjectsFile(fileContent);
+        ObjectUtils.copyObject(remoteObjectsFolder(remoteName), remotePacksFolder(remoteName),
+                OBJECTS_DIR, PACKS_DIR, fileSHA1);
+    }
+
+    /**
+     * copy the trees and blobs of a commit. trees the target has already are skipped with everything under them,
+     * so only the changed directories of a commit are visited.
+     * a commit written before trees has only the flat file map, all its blobs are copied (if the target lacks them).
+     */
+    private static void copyCommitObjects(Commit commit, File fromDir, File fromPacksDir, File toDir, File toPacksDir,
+                                          Transfer transfer) {
+        if (commit.getTreeId() != null) {
+            TreeUtils.copyTree(fromDir, fromPacksDir, toDir, toPacksDir, commit.getTreeId(), transfer::addObject);
+            return;
+        }
+        for (String fileSHA1 : commit.getFileVersionMap().values()) {
+            transfer.addObject(ObjectUtils.copyObject(fromDir, fromPacksDir, toDir, toPacksDir, fileSHA1));
+        }
+    }
+
+    /**
+     * have/want negotiation: the commits reachable from wantId (by both parents) which the target lacks,
+     * parents before children. the missing commits are read from the source, the walk goes on through a commit
+     * the target has only by haveParents: older versions pushed and fetched first parents only, so a merge commit
+     * the target has may lack the history behind its second parent. such history is copied before the commits
+     * which are copied on top of it.
+     * @param reader reads a commit of the source repository
+     * @param toCommitsDir toPacksDir where the target keeps its commits
+     * @param haveParents the parents of a commit the target has which the walk must go on to, empty if its history
+     * is known to be complete. the walk stops at the boundary of the missing commits when they are all empty, so it
+     * costs the number of missing commits, not the length of the shared history
+     */
+    private static List<Commit> missingCommits(String wantId, Function<String, Commit> reader,
+                                               File toCommitsDir, File toPacksDir,
+                                               Function<String, List<String>> haveParents) {
+        List<Commit> result = new ArrayList<>();
+        if (wantId == null) {
+            return result;
+        }
+        Map<String, Commit> wanted = new HashMap<>();
+        Set<String> visited = new HashSet<>();
+        Set<String> ordered = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(wantId);
+        while (!stack.isEmpty()) {
+            String commitId = stack.peek();
+            if (visited.add(commitId)) {
+                // first visit, the parents are pushed and come out of the stack before the commit
+                List<String> parentIds;
+                if (ObjectUtils.hasObject(toCommitsDir, toPacksDir, commitId)) {
+                    parentIds = haveParents.apply(commitId);
+                } else {
+                    Commit commit = reader.apply(commitId);
+                    wanted.put(commitId, commit);
+                    parentIds = parentIds(commit);
+                }
+                for (String parentId : parentIds) {
+                    if (!visited.contains(parentId)) {
+                        stack.push(parentId);
+                    }
+                }
+                continue;
+            }
+            stack.pop();
+            // a commit reached from two children may be on the stack twice
+            if (ordered.add(commitId) && wanted.containsKey(commitId)) {
+                result.add(wanted.get(commitId));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the parents of a local commit which the remote lacks, they are found in the local commit-graph
+     */
+    private static List<String> missingParentIds(String commitId, String remoteName) {
+        List<String> result = new ArrayList<>(2);
+        for (String parentId : CommitGraphUtils.getParentIds(commitId)) {
+            if (!ObjectUtils.hasObject(remoteCommitsFolder(remoteName), remotePacksFolder(remoteName), parentId)) {
+                result.add(parentId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the parent ids of a commit, the first parent comes first
+     */
+    private static List<String> parentIds(Commit commit) {
+        List<String> result = new ArrayList<>(2);
+        for (String parentId : new String[]{commit.getParentId(), commit.getSecondParentId()}) {
+            if (parentId != null) {
+                result.add(parentId);
+            }
+        }
+        return result;
     }
 
     public static String readRemoteHEAD(String remoteName) {
@@ -129,7 +275,14 @@ public class RemoteUtils {
         if (commitId == null) {
             return null;
         }
-        return readObject(join(remoteCommitsFolder(remoteName), commitId), Commit.class);
+        byte[] serializedCommit = ObjectUtils.readObject(remoteCommitsFolder(remoteName), remotePacksFolder(remoteName),
+                ObjectUtils.COMMIT, commitId);
+        if (serializedCommit == null) {
+            throw new IllegalArgumentException("remote commit " + commitId + " does not exist");
+        }
+        Commit commit = deserialize(serializedCommit, Commit.class);
+        commit.setId(commitId);
+        return commit;
     }
 
     /**
@@ -213,6 +366,10 @@ public class RemoteUtils {
         saveRemoteLocationMap();
     }
 
+    /**
+     * copy the commits of the head which the remote lacks (and their objects the remote lacks) to the remote,
+     * then point the remote branch to the head. -v prints the number of commits and objects copied.
+     */
     public static void push(String remoteName, String remoteBranchName) {
         if (!getRemoteGitletFolder(remoteName).exists()) {
             System.out.println("Remote directory not found.");
@@ -220,37 +377,39 @@ public class RemoteUtils {
         }
         String remoteHEAD = readRemoteHEAD(remoteName);
         String remoteHEADCommitId = readRemoteBranch(remoteHEAD, remoteName);
-        Commit currentCommit = CommitUtils.readCommit(Repository.getHeadCommitId());
         if (Repository.getHeadCommitId().equals(remoteHEADCommitId)) {
             return;
         }
         // just think this problem as a linked list, not complicated Graph
         // the order is the newest commit(front) --> older commit --> initial commit
-        List<String> historyCommitId = CommitUtils.commitIdTraceBack(currentCommit);
+        // the history is walked in the commit-graph, no commit is read to find out what to push
+        List<String> historyCommitId = CommitUtils.commitIdTraceBack(Repository.getHeadCommitId());
         if (!historyCommitId.contains(remoteHEADCommitId)) {
             System.out.println("Please pull down remote changes before pushing.");
             return;
         }
-        int remoteIdx = historyCommitId.indexOf(remoteHEADCommitId);
-        List<String> commitIdAppending = historyCommitId.subList(0, remoteIdx);
-        Collections.reverse(commitIdAppending); // from remote id's next --> newest [not contains the remote HEAD commit]
-        // append future commit to remote branch
-        for (String commitId : commitIdAppending) {
-            // 1. copy the commit file
-            copyCommitFileToRemote(commitId, remoteName);
-            // 2. copy the commit objects
-            Commit commit = CommitUtils.readCommit(commitId);
-            HashMap<String, String> fileVersionMap = commit.getFileVersionMap();
-            for (String fileName : fileVersionMap.keySet()) {
-                copyObjectsFileToRemote(fileVersionMap.get(fileName), remoteName);
-            }
+        // append future commit to remote branch, oldest first. the objects of a commit are copied before it
+        Transfer transfer = new Transfer();
+        // a remote commit whose parents are all in the remote is taken to have its whole history, the walk goes on
+        // only to the missing parents of a remote commit (the second parent of a merge pushed by an older version)
+        for (Commit commit : missingCommits(Repository.getHeadCommitId(), CommitUtils::readCommit,
+                remoteCommitsFolder(remoteName), remotePacksFolder(remoteName),
+                commitId -> missingParentIds(commitId, remoteName))) {
+            copyCommitObjects(commit, OBJECTS_DIR, PACKS_DIR, remoteObjectsFolder(remoteName),
+                    remotePacksFolder(remoteName), transfer);
+            transfer.addCommit(copyCommitFileToRemote(CommitUtils.getCommitId(commit), commit, remoteName));
         }
+        transfer.report("pushed");
         // add this branch (or overwriting this branch)
         copyBranchFileToRemote(remoteBranchName, remoteName);
         // set HEAD points to this branch, note: HEAD always points to BRANCH NAME!
         writeRemoteHEAD(remoteName, remoteBranchName);
     }
 
+    /**
+     * copy the commits of the remote branch which the local repository lacks (and their objects it lacks),
+     * then point [remote name]/[remote branch name] to the branch. -v prints the number of commits and objects copied.
+     */
     public static void fetch(String remoteName, String remoteBranchName) {
         if (!getRemoteGitletFolder(remoteName).exists()) {
             System.out.println("Remote directory not found.");
@@ -260,22 +419,26 @@ public class RemoteUtils {
             System.out.println("That remote does not have that branch.");
             return;
         }
-        // 1. copies all commits and blobs from the given branch in the remote repository
+        // 1. copies the commits and objects of the given branch which the local repository lacks, oldest first
         String remoteCommitId = readRemoteBranch(remoteBranchName, remoteName);
-        List<String> allTracedCommitIds = remoteCommitIdTraceback(remoteCommitId, remoteName);
-        // copy these commit files to local
-        for (String commitId : allTracedCommitIds) {
-            copyCommitFileFromRemote(commitId, remoteName);
-            // copy blobs to local
-            Commit commit = readRemoteCommit(commitId, remoteName);
-            HashMap<String, String> fileVersionMap = commit.getFileVersionMap();
-            for (String fileName : fileVersionMap.keySet()) {
-                copyObjectsFileFromRemote(fileVersionMap.get(fileName), remoteName);
-            }
+        Transfer transfer = new Transfer();
+        // a local commit in the commit-graph has its whole history, a commit outside it may not (see missingCommits)
+        for (Commit commit : missingCommits(remoteCommitId, commitId -> readRemoteCommit(commitId, remoteName),
+                COMMITS_DIR, PACKS_DIR, commitId -> CommitGraphUtils.contains(commitId)
+                        ? Collections.emptyList() : parentIds(CommitUtils.readCommit(commitId)))) {
+            copyCommitObjects(commit, remoteObjectsFolder(remoteName), remotePacksFolder(remoteName),
+                    OBJECTS_DIR, PACKS_DIR, transfer);
+            String commitId = CommitUtils.getCommitId(commit);
+            transfer.addCommit(copyCommitFileFromRemote(commitId, commit, remoteName));
+            // added to the graph as it is copied (after its parents), so it is not read again
+            CommitGraphUtils.addCommit(commitId, commit);
         }
+        transfer.report("fetched");
         // create a new branch named [remote name]/[remote branch name] in local repo & points to remote head commit
         // note: because windows not allowed '/' or '\' in file name, so we will create a folder, and save the commit.
         BranchUtils.saveCommitId(remoteName + "/" + remoteBranchName, remoteCommitId);
+        // the fetched commits are in the local commit-graph, this adds the ancestors a graph written before may lack
+        CommitGraphUtils.addCommit(remoteCommitId);
     }
 
     public static void pull(String remoteName, String remoteBranchName) {
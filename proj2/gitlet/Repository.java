@@ -1,12 +1,18 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static gitlet.GitletConstants.*;
 import static gitlet.Utils.*;
 import static gitlet.IndexUtils.indexMap;
-import static gitlet.IndexUtils.stagedFileContents;
 
 /**
  * @description Represents a gitlet repository. Provide helper functions called by Main method.
@@ -15,6 +21,8 @@ import static gitlet.IndexUtils.stagedFileContents;
 public class Repository {
     /** HEAD pointer, this pointer points to current branch name, not explicit commit id, for example HEAD == "master" */
     public static String HEAD;
+    /** set by the -v (--verbose) option before the command, commands may print a report of the work done */
+    public static boolean verbose = false;
 
     /**
      * @return boolean: checkout if this project is gitlet initialized
@@ -53,12 +61,13 @@ public class Repository {
         try {
             INDEX_FILE.createNewFile(); // at first, the index file will be empty
             HEAD_FILE.createNewFile();
-            STAGED_FILE.createNewFile(); // stage file contents
         } catch (IOException e) {
             throw new RuntimeException("failed to create INDEX file and HEAD file");
         }
         COMMITS_DIR.mkdir();
         OBJECTS_DIR.mkdir();
+        PACKS_DIR.mkdir();
+        STAGING_DIR.mkdir(); // blobs of staged files
         BRANCHES_DIR.mkdir();
 
         // store & submit first empty commit
@@ -75,23 +84,29 @@ public class Repository {
     /***
      * In gitlet, only one file may be added at a time.
      * but this function supports add multiple files at once
-     * @param fileName the name of the file want to be added
+     * @param paths files, directories or globs, see FileUtils.matchWorkingTreeFiles()
      */
-    public static void add(String fileName) {
-        if (!join(CWD, fileName).exists()) {
-            System.out.println("File does not exist.");
-            return;
+    public static void add(String... paths) {
+        // update: a path may be a file, a directory (every file under it) or a quoted glob like "*.txt",
+        // files in subdirectories are named like "dir/file.txt". nothing is staged if any path matches nothing.
+        Set<String> fileNames = new TreeSet<>();
+        for (String path : paths) {
+            List<String> matchedFiles = FileUtils.matchWorkingTreeFiles(path);
+            if (matchedFiles == null) {
+                System.out.println("Invalid pattern.");
+                return;
+            }
+            if (matchedFiles.isEmpty()) {
+                System.out.println("File does not exist.");
+                return;
+            }
+            fileNames.addAll(matchedFiles);
         }
 
         // maybe we should only update index; because after every commit, index and commit-map are same;
-        if (indexMap.containsKey(fileName)) {
-            String targetSHA1 = indexMap.get(fileName);
-            // if the file is same as current index files, means no change, then directly return
-            if (FileUtils.hasSameSHA1(fileName, targetSHA1)) return;
-        }
-
-        IndexUtils.stageFile(fileName);
-        IndexUtils.saveIndex();
+        // a file which is same as current index files means no change, it is skipped
+        IndexUtils.stageFiles(fileNames);
+        IndexUtils.saveIndex(); // once for all files
     }
 
     /***
@@ -113,19 +128,26 @@ public class Repository {
             // note: this implementation is different from the proj2 doc
             System.out.println("No changes added to the commit.");
         }
-        Commit newCommit = CommitUtils.makeCommit(commitMessage, currentCommitId, indexMap);
-        CommitUtils.createFileObjects(currentCommit, newCommit, stagedFileContents); // create the files (different from the last commit)
-        stagedFileContents.clear();
-        IndexUtils.saveIndex(); // clear and save
+        Commit newCommit = CommitUtils.makeCommit(commitMessage, currentCommitId, new HashMap<>(indexMap));
+        CommitUtils.createFileObjects(currentCommit, newCommit); // create the files (different from the last commit)
+        IndexUtils.clearStagingArea();
+        IndexUtils.saveIndex();
         String newCommitId = CommitUtils.saveCommit(newCommit);
         BranchUtils.saveCommitId(HEAD, newCommitId); // save current branch pointer --> new commit id
     }
 
     /***
      * the logic will only delete explicit file in work directory, not in .gitlet
-     * @param fileName the file name in work directory
+     * update: the path is normalized like add, so "./dir/../a.txt" removes a.txt; a path out of the working tree
+     * or in .gitlet is never tracked.
+     * @param path the file in work directory
      */
-    public static void rm(String fileName) {
+    public static void rm(String path) {
+        String fileName = FileUtils.toCWDFileName(path);
+        if (fileName == null || fileName.isEmpty()) {
+            System.out.println("No reason to remove the file.");
+            return;
+        }
         Commit commit = CommitUtils.readCommit(getHeadCommitId());
         boolean staged = IndexUtils.isStaged(fileName, commit);
         boolean trackedByHeadCommit = CommitUtils.isTrackedByCommit(commit, fileName);
@@ -137,53 +159,138 @@ public class Repository {
         IndexUtils.saveIndex(); // note: all changes must be saved
         if (trackedByHeadCommit) {
             // if it is tracked by current commit, you should delete the file in CWD.
-            restrictedDelete(join(CWD, fileName));
+            FileUtils.deleteCWDFile(fileName);
         }
     }
 
     /***
      * trace commit chain from head->commit to initial commit
+     * update: log [-n count] [--since=date] [--until=date] [--first-parent]
+     * the chain is walked lazily and printed through a buffer as it is walked, a commit is read only if it is printed.
+     * -n stops after count commits. the dates are "yyyy-MM-dd" or "yyyy-MM-dd HH:mm:ss" in the time zone of log.
+     * --until skips the newer commits by their time in the commit-graph, --since stops at the first older commit,
+     * since the commits of the chain are older and older.
+     * log always follows first parents (the merged branch is not shown), --first-parent is accepted like git.
+     * update: log [options] -- path, only the commits which change the file (or a file under the directory) against
+     * their first parents are printed. a commit whose changed-path filter rules the path out is skipped without
+     * being read, see ChangedPathUtils.
      */
-    public static void log() {
-        Commit currentCommit = CommitUtils.readCommit(getHeadCommitId());
-        List<Commit> commits = CommitUtils.commitTraceBack(currentCommit);
-        for (Commit commit : commits) {
-            commit.printCommitInfo();
+    public static void log(String... args) {
+        int maxCount = -1;
+        Long since = null;
+        Long until = null;
+        String path = null;
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            boolean valid;
+            if (arg.equals("--")) {
+                valid = i + 2 == args.length && FileUtils.toCWDFileName(args[i + 1]) != null
+                        && !FileUtils.toCWDFileName(args[i + 1]).isEmpty();
+                path = valid ? FileUtils.toCWDFileName(args[++i]) : null;
+            } else if (arg.equals("-n")) {
+                valid = i + 1 < args.length && args[i + 1].matches("\\d{1,9}");
+                maxCount = valid ? Integer.parseInt(args[++i]) : maxCount;
+            } else if (arg.startsWith("--since=")) {
+                since = parseLogDate(arg.substring("--since=".length()));
+                valid = since != null;
+            } else if (arg.startsWith("--until=")) {
+                until = parseLogDate(arg.substring("--until=".length()));
+                valid = until != null;
+            } else {
+                valid = arg.equals("--first-parent");
+            }
+            if (!valid) {
+                System.out.println(INCORRECT_OPERANDS_WARNING);
+                return;
+            }
+        }
+        int[] pathHashes = path == null ? null : ChangedPathUtils.hashes(path);
+        SimpleDateFormat sdf = Commit.logDateFormat();
+        OutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+        try {
+            Iterator<String> commitIds = CommitUtils.commitIdIterator(getHeadCommitId());
+            for (int printed = 0; printed != maxCount && commitIds.hasNext(); ) {
+                String commitId = commitIds.next();
+                long commitTime = CommitGraphUtils.getCommitTime(commitId);
+                if (since != null && commitTime < since) {
+                    break;
+                }
+                if (until != null && commitTime > until) {
+                    continue;
+                }
+                if (path != null && (!CommitGraphUtils.mayChangePath(commitId, pathHashes)
+                        || !ChangedPathUtils.changedPaths(CommitUtils.readCommit(commitId)).contains(path))) {
+                    continue;
+                }
+                out.write(CommitUtils.readCommit(commitId).getCommitInfo(sdf).getBytes(StandardCharsets.UTF_8));
+                printed++;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to write log");
         }
     }
 
+    /**
+     * @return time in milliseconds of a date of log --since/--until, null if it is not a date
+     */
+    private static Long parseLogDate(String date) {
+        for (String pattern : new String[]{"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd"}) {
+            SimpleDateFormat sdf = new SimpleDateFormat(pattern, Locale.US);
+            sdf.setTimeZone(Commit.logDateFormat().getTimeZone());
+            sdf.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date parsed = sdf.parse(date, position);
+            if (parsed != null && position.getIndex() == date.length()) {
+                return parsed.getTime();
+            }
+        }
+        return null;
+    }
+
     /***
      * global-log: print all commits with random order
+     * update: printed through a buffer, like log
+     * update: the commits are printed from the compact commit-meta sidecar in the order they were saved,
+     * no commit is read, see CommitMetaUtils
      */
     public static void globalLog() {
-        List<String> commitIdList = plainFilenamesIn(COMMITS_DIR);
-        if (commitIdList == null || commitIdList.isEmpty()) {
-            return;
-        }
-        for (String commitId : commitIdList) {
-            CommitUtils.readCommit(commitId).printCommitInfo();
+        SimpleDateFormat sdf = Commit.logDateFormat();
+        OutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+        try {
+            CommitMetaUtils.forEachCommit(meta -> {
+                try {
+                    out.write(meta.getCommitInfo(sdf).getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("failed to write log");
         }
     }
 
     /**
      * Prints out the ids of all commits that have the given commit message, one per line
+     * update: find [--grep] message. the ids are looked up in the message index (see CommitMetaUtils) instead of
+     * reading every commit. with --grep, the commits whose message contains message are printed.
      */
-    public static void find(String commitMessage) {
-        List<String> commitIdList = plainFilenamesIn(COMMITS_DIR);
-        if (commitIdList == null || commitIdList.isEmpty()) {
+    public static void find(String... args) {
+        List<String> commitIdList;
+        if (args.length == 1) {
+            commitIdList = CommitMetaUtils.findByMessage(args[0]);
+        } else if (args.length == 2 && args[0].equals("--grep")) {
+            commitIdList = CommitMetaUtils.findByText(args[1]);
+        } else {
+            System.out.println(INCORRECT_OPERANDS_WARNING);
             return;
         }
-        boolean printFlag = false;
-        for (String commitId : commitIdList) {
-            Commit commit = CommitUtils.readCommit(commitId);
-            if (commitMessage.equals(commit.getMessage())) {
-                System.out.println(CommitUtils.getCommitId(commit));
-                printFlag = true;
-            }
-        }
-        if (!printFlag) {
+        if (commitIdList.isEmpty()) {
             System.out.println("Found no commit with that message.");
+            return;
         }
+        commitIdList.forEach(System.out::println);
     }
 
     /***
@@ -205,9 +312,8 @@ public class Repository {
                     System.out.println("Incorrect operands.");
                 }
                 fileName = args[2];
-                commit = CommitUtils.readCommitByPrefix(args[0]);
+                commit = readCommitByPrefix(args[0]);
                 if (commit == null) {
-                    System.out.println("No commit with that id exists.");
                     return;
                 }
             }
@@ -220,7 +326,7 @@ public class Repository {
 
     /**
      * change to new branch's pointer commit, just like the new branch's commit just happen.
-     * so indexMap(& .gitlet/index) is the same as the new branch commit fileVersionMap, stagedFiles(& .gitlet/staged-files) is cleared.
+     * so indexMap(& .gitlet/index) is the same as the new branch commit fileVersionMap, the staging area(.gitlet/staging) is cleared.
      * @param commit current commit object (before branch change)
      * @param branchName the name of the branch to be changed to
      */
@@ -233,8 +339,7 @@ public class Repository {
             System.out.println("No need to checkout the current branch.");
             return;
         }
-        List<String> CWDFileNames = plainFilenamesIn(CWD);
-        assert CWDFileNames != null;
+        List<String> CWDFileNames = FileUtils.workingTreeFiles();
         for (String fileName : CWDFileNames) {
             if (!CommitUtils.isTrackedByCommit(commit, fileName)) {
                 System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
@@ -250,27 +355,29 @@ public class Repository {
     }
 
     /**
-     * restore this commit to CWD, and restore index region(clear stagedFileContents and restore indexMap)
+     * restore this commit to CWD, and restore index region(clear the staging area and restore indexMap)
      * just like the commit just happen.
      */
     private static void restoreCommit(Commit commit) {
         Commit currentCommit = CommitUtils.readCommit(getHeadCommitId());
-        // pre-check
+        // pre-check, CWD is listed once for all files
+        Set<String> CWDFileNames = new HashSet<>(FileUtils.workingTreeFiles());
         for (String fileName : commit.getFileVersionMap().keySet()) {
-            if (FileUtils.isOverwritingOrDeletingCWDUntracked(fileName, currentCommit)) {
+            if (FileUtils.isOverwritingOrDeletingCWDUntracked(fileName, currentCommit, CWDFileNames)) {
                 System.out.println(MERGE_MODIFY_UNTRACKED_WARNING);
                 return;
             }
         }
 
-        // 1. restore files to CWD
-        FileUtils.restoreCommitFiles(commit);
+        // 1. restore files to CWD, only the files which differ from the current commit are written
+        List<String> writtenFiles = FileUtils.restoreCommitFiles(currentCommit, commit);
 
         // 2. restore indexMap
         // note: to keep consistency, checkout branch just like the new branch's commit() just happen
-        // so it will restore indexMap & .gitlet/index, but stagedFiles and its file stay empty.
-        indexMap = commit.getFileVersionMap();
-        stagedFileContents.clear();
+        // so it will restore indexMap & .gitlet/index, but the staging area stays empty.
+        IndexUtils.resetIndex(commit.getFileVersionMap());
+        IndexUtils.refreshStats(writtenFiles); // the stat data of the other files is kept by resetIndex
+        IndexUtils.clearStagingArea();
         IndexUtils.saveIndex();
     }
 
@@ -283,8 +390,28 @@ public class Repository {
             return;
         }
         String fileSHA1 = commit.getFileVersionMap().get(fileName);
-        String fileContent = FileUtils.getFileContent(fileSHA1);
-        FileUtils.writeCWDFile(fileName, fileContent);
+        FileUtils.restoreCWDFile(fileName, fileSHA1);
+    }
+
+    /***
+     * move all loose commits and objects into a new pack, see PackUtils.
+     * reading a packed commit or object never lists .gitlet/commits or .gitlet/objects.
+     */
+    public static void repack() {
+        PackUtils.packLooseObjects();
+    }
+
+    /**
+     * convert a repository created by an older version in place: loose commits and objects stored directly in
+     * .gitlet/commits, .gitlet/objects and .gitlet/staging are moved into their fan-out subdirectories.
+     * update: the changed-path filters of the commit-graph are computed for every commit, the commits written
+     * before the filters have none (and are always read by log -- path).
+     */
+    public static void migrate() {
+        ObjectUtils.migrateLooseObjects(COMMITS_DIR);
+        ObjectUtils.migrateLooseObjects(OBJECTS_DIR);
+        ObjectUtils.migrateLooseObjects(STAGING_DIR);
+        CommitGraphUtils.rebuildChangedPaths();
     }
 
     /***
@@ -326,43 +453,40 @@ public class Repository {
         }
         System.out.println();
 
-        // print staged files
+        // every other section comes from one scan of CWD, see StatusUtils
         Commit commit = CommitUtils.readCommit(getHeadCommitId());
-        List<String> stagedFileNames = IndexUtils.getStagedFiles(commit);
+        StatusUtils.Status status = StatusUtils.scan(commit);
+
+        // print staged files
         System.out.println("=== Staged Files ===");
-        stagedFileNames.forEach(System.out::println);
+        status.stagedFiles.forEach(System.out::println);
         System.out.println();
 
         // print removed files
-        List<String> removedFileNames = IndexUtils.getRemovedFiles(commit);
         System.out.println("=== Removed Files ===");
-        removedFileNames.forEach(System.out::println);
+        status.removedFiles.forEach(System.out::println);
         System.out.println();
 
         System.out.println("=== Modifications Not Staged For Commit ===");
-        List<StringBuffer> modifiedNotStagedForCommit = IndexUtils.modifiedNotStagedForCommit(commit);
-        List<StringBuffer> deletedNotStagedForCommit = IndexUtils.deletedNotStagedForCommit(commit);
-        modifiedNotStagedForCommit.forEach(s -> s.append(" (modified)"));
-        deletedNotStagedForCommit.forEach(s -> s.append(" (deleted)"));
-        modifiedNotStagedForCommit.addAll(deletedNotStagedForCommit);
-        modifiedNotStagedForCommit.sort(StringBuffer::compareTo);
-        modifiedNotStagedForCommit.forEach(System.out::println);
+        status.modifiedFiles.forEach(System.out::println);
         System.out.println();
 
         // ("Untracked Files") is for files present in the working directory but neither staged for addition nor tracked.
         System.out.println("=== Untracked Files ===");
-        List<String> untrackedFileNames = IndexUtils.getUntrackedFiles(commit);
-        untrackedFileNames.forEach(System.out::println);
+        status.untrackedFiles.forEach(System.out::println);
         System.out.println();
+
+        // files hashed above are recorded with their stat data, so the next status will not hash them again
+        IndexUtils.saveIndex();
+        FsMonitorUtils.report();
     }
 
     /**
      * The command is essentially checkout of an arbitrary commit that also changes the current branch head.
      */
     public static void reset(String commitIdPrefix) {
-        Commit commit = CommitUtils.readCommitByPrefix(commitIdPrefix);
+        Commit commit = readCommitByPrefix(commitIdPrefix);
         if (commit == null) {
-            System.out.println("No commit with that id exists.");
             return;
         }
         String commitId = CommitUtils.getCommitId(commit);
@@ -414,71 +538,81 @@ public class Repository {
         }
 
         // Complex situation: merge with no conflict or merge with conflict
-        Set<String> splitPointFiles = splitPoint.getFileVersionMap().keySet();
-        Set<String> currentCommitFiles = currentCommit.getFileVersionMap().keySet();
-        Set<String> branchCommitFiles = branchCommit.getFileVersionMap().keySet();
-        // union the upper three set to get all relevant files in three commits
-        // bug: you have to allocate new memory, not reference
-        Set<String> allRelevantFiles = new HashSet<>(splitPointFiles); // there is other usage with variable splitPointFiles
-        allRelevantFiles.addAll(currentCommitFiles);
-        allRelevantFiles.addAll(branchCommitFiles);
-
-        boolean conflictFlag = false;
+        // update: only files changed on at least one side are relevant, a file which is the same in all three commits
+        // is skipped by the merge anyway. the changes are found by comparing trees, unchanged subtrees are not read.
+        TreeMap<String, TreeUtils.Change> currentChanges = CommitUtils.diffCommits(splitPoint, currentCommit);
+        TreeMap<String, TreeUtils.Change> branchChanges = CommitUtils.diffCommits(splitPoint, branchCommit);
+        Set<String> allRelevantFiles = new TreeSet<>(currentChanges.keySet());
+        allRelevantFiles.addAll(branchChanges.keySet());
+        Set<String> CWDFileNames = new HashSet<>(FileUtils.workingTreeFiles());
+
+        // update: CWD is checked for every file before anything is changed, so a merge which stops leaves no
+        // half-merged files. then the files are written and staged at once, the index is saved once.
+        Map<String, String> checkedOutFiles = new TreeMap<>();
+        List<String> removedFiles = new ArrayList<>();
+        List<String> mergedFiles = new ArrayList<>();
+        Map<String, String[]> mergedVersions = new HashMap<>();
 
         for (String fileName : allRelevantFiles) {
-            boolean splitCurrentConsistent = CommitUtils.isConsistent(fileName, splitPoint, currentCommit);
-            boolean splitBranchConsistent = CommitUtils.isConsistent(fileName, splitPoint, branchCommit);
-            boolean branchCurrentConsistent = CommitUtils.isConsistent(fileName, currentCommit, branchCommit);
+            // versions of the file in the three commits, null if the commit does not have it
+            TreeUtils.Change currentChange = currentChanges.get(fileName);
+            TreeUtils.Change branchChange = branchChanges.get(fileName);
+            String splitVersion = currentChange != null ? currentChange.oldVersion : branchChange.oldVersion;
+            String currentVersion = currentChange != null ? currentChange.newVersion : splitVersion;
+            String branchVersion = branchChange != null ? branchChange.newVersion : splitVersion;
+            boolean splitCurrentConsistent = Objects.equals(splitVersion, currentVersion);
+            boolean splitBranchConsistent = Objects.equals(splitVersion, branchVersion);
+            boolean branchCurrentConsistent = Objects.equals(currentVersion, branchVersion);
             // merge no conflicts
             if ((splitBranchConsistent && !splitCurrentConsistent) || branchCurrentConsistent) {
                 continue;
             }
 
+            // safety check is needed, every file left is written or deleted
+            if (FileUtils.isOverwritingOrDeletingCWDUntracked(fileName, currentCommit, CWDFileNames)) {
+                System.out.println(MERGE_MODIFY_UNTRACKED_WARNING);
+                return;
+            }
             if (!splitBranchConsistent && splitCurrentConsistent) {
-                if (!branchCommitFiles.contains(fileName)) {
+                if (branchVersion == null) {
                     // in this case, other two commit must contain the file
                     // remove the file from CWD & not tracked this file in merged commit
                     // which means drop indexMap's record with this fileName
-                    if (FileUtils.isOverwritingOrDeletingCWDUntracked(fileName, currentCommit)) { // safety check is needed
-                        System.out.println(MERGE_MODIFY_UNTRACKED_WARNING);
-                        return;
-                    } else {
-                        rm(fileName);
-                    }
+                    removedFiles.add(fileName);
                 } else {
                     // in this case, we will checkout the file in branchCommit and add it to index
-                    if (FileUtils.isOverwritingOrDeletingCWDUntracked(fileName, currentCommit)) { // safety check is needed
-                        System.out.println(MERGE_MODIFY_UNTRACKED_WARNING);
-                        return;
-                    } else {
-                        checkoutFile(branchCommit, fileName);
-                        add(fileName);
-                    }
+                    checkedOutFiles.put(fileName, branchVersion);
                 }
                 continue;
             }
 
             // merge with conflicts, if logic can be simplified
-            if (!splitBranchConsistent && !splitCurrentConsistent && !branchCurrentConsistent) {
-                conflictFlag = true;
-                StringBuilder conflictedContents = new StringBuilder("<<<<<<< HEAD\n");
-                String currentCommitContent =  currentCommitFiles.contains(fileName) ?
-                                               FileUtils.getFileContent(fileName, currentCommit) : "";
-                String branchCommitContent = branchCommitFiles.contains(fileName) ?
-                                             FileUtils.getFileContent(fileName, branchCommit) : "";
-                conflictedContents.append(currentCommitContent);
-                conflictedContents.append("=======\n");
-                conflictedContents.append(branchCommitContent);
-                conflictedContents.append(">>>>>>>\n");
-                if (FileUtils.isOverwritingOrDeletingCWDUntracked(fileName, currentCommit)) { // safety check is needed
-                    System.out.println(MERGE_MODIFY_UNTRACKED_WARNING);
-                    return;
-                } else {
-                    FileUtils.writeCWDFile(fileName, String.valueOf(conflictedContents));
-                    add(fileName);
-                }
-            }
+            // update: both sides changed the file, the lines are merged against the split point (see MergeUtils),
+            // only the hunks changed by both sides differently are conflicts
+            mergedFiles.add(fileName);
+            mergedVersions.put(fileName, new String[]{splitVersion, currentVersion, branchVersion});
+        }
+
+        // the files are independent, they are read and merged on all cores
+        Map<String, MergeUtils.MergeResult> mergeResults = mergedFiles.parallelStream()
+                .collect(Collectors.toMap(fileName -> fileName, fileName -> {
+                    String[] versions = mergedVersions.get(fileName);
+                    return MergeUtils.mergeFile(readVersion(versions[0]), readVersion(versions[1]),
+                            readVersion(versions[2]));
+                }));
+        boolean conflictFlag = false;
+        FileUtils.restoreCWDFiles(checkedOutFiles, removedFiles);
+        for (String fileName : mergedFiles) {
+            MergeUtils.MergeResult result = mergeResults.get(fileName);
+            conflictFlag |= result.conflicted;
+            FileUtils.writeCWDFile(fileName, result.content);
         }
+        for (String fileName : removedFiles) {
+            IndexUtils.unstageFile(fileName);
+        }
+        IndexUtils.stageVersions(checkedOutFiles);
+        IndexUtils.stageFiles(mergedFiles);
+        IndexUtils.saveIndex();
 
         // 1. make commit 2. set this new commit secondParentId
         commit("Merged " + branchName + " into " + HEAD + ".");
@@ -497,6 +631,30 @@ public class Repository {
     }
 
 
+    /**
+     * @return the content of a committed file of some version, null for null (the commit does not have the file)
+     */
+    private static byte[] readVersion(String fileSHA1) {
+        return fileSHA1 == null ? null : FileUtils.getFileBytes(fileSHA1);
+    }
+
+    /**
+     * read the commit of an abbreviated id for checkout, reset and diff, print the reason if there is no such commit
+     * @return null if no commit or more than one commit has this id prefix
+     */
+    static Commit readCommitByPrefix(String commitIdPrefix) {
+        CommitIdIndexUtils.PrefixMatch match = CommitUtils.findCommitIdByPrefix(commitIdPrefix);
+        if (match.isAmbiguous()) {
+            System.out.println(AMBIGUOUS_COMMIT_ID_WARNING);
+            return null;
+        }
+        if (!match.isFound()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
+        return CommitUtils.readCommit(match.getCommitId());
+    }
+
     /**
      * It set HEAD --> branch_name (other function maybe about set head on commit,
      * but this project will ignore this situation)
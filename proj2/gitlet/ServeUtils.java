@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 17:30
+ * @Description "gitlet serve" runs many commands in one JVM, so JVM startup and reading HEAD, the index, the commit
+ * graph, packs and cached commits are paid once instead of once per command.
+ * <p>
+ * commands are read one per line, from stdin, or from local TCP connections with --port=N (127.0.0.1 only).
+ * arguments are split by spaces, "double quotes" keep spaces in one argument (\" and \\ inside quotes).
+ * the answer to every command is a line "status [exit status] [length]" followed by length bytes of output.
+ * the exit status is 1 if the command failed with an exception, otherwise 0, as a gitlet process would exit.
+ * "quit" (or end of input) ends a session.
+ * <p>
+ * before every command the state read from .gitlet is checked against the files, anything changed by other
+ * processes (or by a command which failed in the middle) is read again. cached commits never need it:
+ * a commit is stored by the sha1 of its contents.
+ */
+public class ServeUtils {
+    /** commands change static state, only one runs at a time */
+    private static final Object COMMAND_LOCK = new Object();
+    /** true if the last command failed, the state it left in memory is not trusted */
+    private static boolean stateBroken = false;
+
+    /**
+     * usage: serve [--port=N], N = 0 picks a free port, the port is printed as "listening on port N"
+     */
+    public static void serve(String[] args) {
+        try {
+            if (args.length == 0) {
+                serveSession(System.in, System.out);
+            } else if (args.length == 1 && args[0].startsWith("--port=")) {
+                listen(Integer.parseInt(args[0].substring("--port=".length())));
+            } else {
+                System.out.println(INCORRECT_OPERANDS_WARNING);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println(INCORRECT_OPERANDS_WARNING);
+        } catch (IOException e) {
+            throw new RuntimeException("serve failed: " + e.getMessage());
+        }
+    }
+
+    private static void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("listening on port " + server.getLocalPort());
+            System.out.flush();
+            while (true) {
+                Socket socket = server.accept();
+                Thread session = new Thread(() -> {
+                    try (Socket client = socket) {
+                        serveSession(client.getInputStream(), client.getOutputStream());
+                    } catch (IOException e) {
+                        // the client is gone, nothing to answer
+                    }
+                });
+                session.setDaemon(true);
+                session.start();
+            }
+        }
+    }
+
+    private static void serveSession(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            List<String> args = splitCommand(line);
+            if (args != null && args.isEmpty()) {
+                continue;
+            }
+            if (args != null && args.size() == 1 && args.get(0).equals("quit")) {
+                break;
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int status = args == null ? 1 : runCommand(args.toArray(new String[0]), output);
+            if (args == null) {
+                output.write("Unmatched quote.\n".getBytes(StandardCharsets.UTF_8));
+            }
+            out.write(("status " + status + " " + output.size() + "\n").getBytes(StandardCharsets.UTF_8));
+            output.writeTo(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * run one command with its stdout and stderr written to output
+     * @return exit status
+     */
+    private static int runCommand(String[] args, ByteArrayOutputStream output) {
+        synchronized (COMMAND_LOCK) {
+            PrintStream stdout = System.out;
+            PrintStream stderr = System.err;
+            PrintStream capture = new PrintStream(output, true, StandardCharsets.UTF_8);
+            System.setOut(capture);
+            System.setErr(capture);
+            try {
+                reloadState();
+                if (args[0].equals("serve")) {
+                    System.out.println("serve cannot be run by serve.");
+                    return 1;
+                }
+                Main.main(args);
+                return 0;
+            } catch (RuntimeException | AssertionError e) {
+                capture.println(e);
+                stateBroken = true;
+                return 1;
+            } finally {
+                capture.flush();
+                System.setOut(stdout);
+                System.setErr(stderr);
+            }
+        }
+    }
+
+    /**
+     * make the static state the same as a new gitlet process would have
+     */
+    private static void reloadState() {
+        if (stateBroken) {
+            IndexUtils.indexMap = null; // read again from the files
+            stateBroken = false;
+        }
+        Repository.verbose = false;
+        Repository.HEAD = Repository.isInitialized() ? readContentsAsString(HEAD_FILE) : null;
+        IndexUtils.reloadIfChanged();
+        RemoteUtils.loadRemoteLocationMap();
+        CommitGraphUtils.reloadIfChanged();
+        PackUtils.closePacks();
+        FsMonitorUtils.reset();
+    }
+
+    /**
+     * split a command line into arguments
+     * @return null if a quote is not closed
+     */
+    static List<String> splitCommand(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder arg = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()
+                        && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')) {
+                    arg.append(line.charAt(++i));
+                } else {
+                    arg.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (arg != null) {
+                    result.add(arg.toString());
+                    arg = null;
+                }
+            } else {
+                if (arg == null) {
+                    arg = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    arg.append(c);
+                }
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        if (arg != null) {
+            result.add(arg.toString());
+        }
+        return result;
+    }
+}
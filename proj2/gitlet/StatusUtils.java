@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.IndexUtils.indexMap;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 16:10
+ * @Description the status engine. CWD is listed once (or asked from fsmonitor), and every file name (in CWD, in indexMap or in the commit)
+ * is classified in one pass with hash lookups. the files whose contents must be compared are checked by the
+ * stat cache first, the others are hashed in parallel.
+ */
+public class StatusUtils {
+    /**
+     * the result of one scan, every list is sorted
+     */
+    public static class Status {
+        /** in indexMap with a version different from the commit (or not in the commit) */
+        public final List<String> stagedFiles = new ArrayList<>();
+        /** in the commit but not in indexMap */
+        public final List<String> removedFiles = new ArrayList<>();
+        /** "[file name] (modified)" or "[file name] (deleted)" */
+        public final List<String> modifiedFiles = new ArrayList<>();
+        /** in CWD, but neither staged nor tracked */
+        public final List<String> untrackedFiles = new ArrayList<>();
+    }
+
+    /**
+     * compare CWD and indexMap with the commit, see the status command for the meaning of each list.
+     * files hashed here get their stat data recorded in the index, save the index to keep it.
+     */
+    public static Status scan(Commit commit) {
+        HashMap<String, String> fileVersionMap = commit.getFileVersionMap();
+        Set<String> CWDFileNames = new HashSet<>(FsMonitorUtils.listFiles());
+        Status status = new Status();
+
+        // the version each existing file in CWD must have, otherwise it is modified but not staged
+        Map<String, String> expectedVersions = new HashMap<>();
+        Set<String> deletedFiles = new TreeSet<>();
+        for (Map.Entry<String, String> entry : indexMap.entrySet()) {
+            String fileName = entry.getKey();
+            boolean staged = !entry.getValue().equals(fileVersionMap.get(fileName));
+            if (staged) {
+                status.stagedFiles.add(fileName);
+            }
+            if (!CWDFileNames.contains(fileName)) {
+                // staged but deleted, or tracked, not staged for removal, but deleted
+                deletedFiles.add(fileName);
+            } else if (staged) {
+                expectedVersions.put(fileName, entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : fileVersionMap.entrySet()) {
+            String fileName = entry.getKey();
+            if (!indexMap.containsKey(fileName)) {
+                status.removedFiles.add(fileName);
+            }
+            if (CWDFileNames.contains(fileName) && !expectedVersions.containsKey(fileName)) {
+                expectedVersions.put(fileName, entry.getValue()); // tracked and not staged
+            }
+        }
+        for (String fileName : CWDFileNames) {
+            if (!fileVersionMap.containsKey(fileName) && !indexMap.containsKey(fileName)) {
+                status.untrackedFiles.add(fileName);
+            }
+        }
+
+        Map<String, String> actualVersions = hashFiles(expectedVersions.keySet());
+        for (Map.Entry<String, String> entry : expectedVersions.entrySet()) {
+            if (!entry.getValue().equals(actualVersions.get(entry.getKey()))) {
+                status.modifiedFiles.add(entry.getKey() + " (modified)");
+            }
+        }
+        for (String fileName : deletedFiles) {
+            status.modifiedFiles.add(fileName + " (deleted)");
+        }
+        status.stagedFiles.sort(String::compareTo);
+        status.removedFiles.sort(String::compareTo);
+        status.modifiedFiles.sort(String::compareTo);
+        status.untrackedFiles.sort(String::compareTo);
+        return status;
+    }
+
+    /** a file hashed by a worker, with its stat data taken before it was read */
+    private static class HashedFile {
+        final String fileName;
+        final IndexUtils.FileStat stat;
+        final String fileSHA1;
+
+        HashedFile(String fileName) {
+            this.fileName = fileName;
+            this.stat = IndexUtils.FileStat.of(join(CWD, fileName));
+            this.fileSHA1 = FileUtils.getFileContentSHA1(fileName);
+        }
+    }
+
+    /**
+     * @return file name --> version of the file in CWD. the stat cache is asked first (in this thread, the index
+     * is not thread-safe), the other files are hashed on all cores, then their stat data is recorded.
+     */
+    private static Map<String, String> hashFiles(Collection<String> fileNames) {
+        Map<String, String> result = new HashMap<>();
+        List<String> uncachedFiles = new ArrayList<>();
+        for (String fileName : fileNames) {
+            String cachedSHA1 = IndexUtils.getCachedSHA1(fileName);
+            if (cachedSHA1 != null) {
+                result.put(fileName, cachedSHA1);
+            } else {
+                uncachedFiles.add(fileName);
+            }
+        }
+        List<HashedFile> hashedFiles = uncachedFiles.parallelStream()
+                .map(HashedFile::new)
+                .collect(Collectors.toList());
+        for (HashedFile hashedFile : hashedFiles) {
+            result.put(hashedFile.fileName, hashedFile.fileSHA1);
+            IndexUtils.refreshStat(hashedFile.fileName, hashedFile.stat, hashedFile.fileSHA1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,311 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.LongConsumer;
+
+import static gitlet.GitletConstants.*;
+import static gitlet.Utils.*;
+
+/**
+ * @Author 3590
+ * @Date 2026/10/18 18:20
+ * @Description tree objects, like git's trees. a commit references the root tree of its files instead of holding
+ * the whole fileVersionMap, and every directory is a tree object of its own, stored in .gitlet/objects.
+ * a subtree which does not change between two commits has the same id in both, so it is written once and shared,
+ * and comparing two commits skips it by comparing ids.
+ * <p>
+ * tree layout: file entries sorted by name, then directory entries sorted by name.
+ * each entry is [mode] [name]\0[id(20 bytes)], mode is "100644" for a file (the id is a blob) and "40000" for a directory (the id is a tree).
+ * a tree is always written after its subtrees, so a repository which has a tree has everything under it.
+ * the id of a tree is the sha-1 of its header and its layout (see ObjectUtils.objectId()), so it is never the id of
+ * a blob with the same bytes, e.g. the empty tree and an empty file.
+ */
+public class TreeUtils {
+    private static final String FILE_MODE = "100644";
+    private static final String DIR_MODE = "40000";
+    private static final int ID_LENGTH = 20;
+    /** the max number of trees kept in treeCache */
+    private static final int TREE_CACHE_SIZE = 4096;
+    /** tree id --> tree, trees never change, so a cached tree is valid in any repository */
+    private static final Map<String, Tree> treeCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Tree> eldest) {
+            return size() > TREE_CACHE_SIZE;
+        }
+    };
+
+    /** a directory: file name --> blob id, directory name --> tree id */
+    private static class Tree {
+        final TreeMap<String, String> files = new TreeMap<>();
+        final TreeMap<String, String> dirs = new TreeMap<>();
+    }
+
+    /** a directory being built from flat file names, see writeTree() */
+    private static class TreeBuilder {
+        final TreeMap<String, String> files = new TreeMap<>();
+        final TreeMap<String, TreeBuilder> dirs = new TreeMap<>();
+    }
+
+    /**
+     * a file which differs between two commits
+     */
+    public static class Change {
+        /** null if the file is added */
+        public final String oldVersion;
+        /** null if the file is removed */
+        public final String newVersion;
+
+        Change(String oldVersion, String newVersion) {
+            this.oldVersion = oldVersion;
+            this.newVersion = newVersion;
+        }
+    }
+
+    /**
+     * write the trees of these files to .gitlet/objects, trees which are there already are not written again
+     * @param fileVersionMap file name ("dir/file" for a file in a subdirectory) --> blob id
+     * @return id of the root tree
+     */
+    public static String writeTree(Map<String, String> fileVersionMap) {
+        TreeBuilder root = new TreeBuilder();
+        for (Map.Entry<String, String> entry : fileVersionMap.entrySet()) {
+            String[] path = entry.getKey().split("/");
+            TreeBuilder dir = root;
+            for (int i = 0; i < path.length - 1; ++i) {
+                dir = dir.dirs.computeIfAbsent(path[i], name -> new TreeBuilder());
+            }
+            dir.files.put(path[path.length - 1], entry.getValue());
+        }
+        return writeTree(root);
+    }
+
+    private static String writeTree(TreeBuilder builder) {
+        Tree tree = new Tree();
+        tree.files.putAll(builder.files);
+        for (Map.Entry<String, TreeBuilder> entry : builder.dirs.entrySet()) {
+            tree.dirs.put(entry.getKey(), writeTree(entry.getValue())); // subtrees first
+        }
+        String treeId = ObjectUtils.writeObject(OBJECTS_DIR, PACKS_DIR, ObjectUtils.TREE, serialize(tree));
+        treeCache.put(treeId, tree);
+        return treeId;
+    }
+
+    /**
+     * @return all files under the tree, file name ("dir/file" for a file in a subdirectory) --> blob id
+     */
+    public static HashMap<String, String> readFiles(String treeId) {
+        HashMap<String, String> result = new HashMap<>();
+        collectFiles(treeId, "", result);
+        return result;
+    }
+
+    private static void collectFiles(String treeId, String prefix, Map<String, String> result) {
+        Tree tree = readTree(OBJECTS_DIR, PACKS_DIR, treeId);
+        for (Map.Entry<String, String> entry : tree.files.entrySet()) {
+            result.put(prefix + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : tree.dirs.entrySet()) {
+            collectFiles(entry.getValue(), prefix + entry.getKey() + "/", result);
+        }
+    }
+
+    /**
+     * record the path of the tree and of every subtree and blob under it which is not in paths yet,
+     * a tree which is in paths is skipped with everything under it. see PackUtils, paths are hints for deltas.
+     * @param prefix path of the tree, "" for a root tree, "dir/" for a subtree
+     * @param paths object id --> path ("dir/file" for a blob, "dir/" for a tree)
+     */
+    public static void collectPaths(String treeId, String prefix, Map<String, String> paths) {
+        if (paths.putIfAbsent(treeId, prefix) != null) {
+            return;
+        }
+        Tree tree = readTree(OBJECTS_DIR, PACKS_DIR, treeId);
+        for (Map.Entry<String, String> entry : tree.files.entrySet()) {
+            paths.putIfAbsent(entry.getValue(), prefix + entry.getKey());
+        }
+        for (Map.Entry<String, String> entry : tree.dirs.entrySet()) {
+            collectPaths(entry.getValue(), prefix + entry.getKey() + "/", paths);
+        }
+    }
+
+    /**
+     * add the ids of all blobs under the tree to blobIds, a tree which is in visitedTrees is skipped with everything
+     * under it, so a subtree shared by many commits is read once. see GrepUtils.
+     */
+    public static void collectBlobs(String treeId, Set<String> visitedTrees, Set<String> blobIds) {
+        if (!visitedTrees.add(treeId)) {
+            return;
+        }
+        Tree tree = readTree(OBJECTS_DIR, PACKS_DIR, treeId);
+        blobIds.addAll(tree.files.values());
+        for (String subtreeId : tree.dirs.values()) {
+            collectBlobs(subtreeId, visitedTrees, blobIds);
+        }
+    }
+
+    /**
+     * find the files under the tree whose blobs are in blobIds. a subtree is searched only if such a blob is under
+     * it, which is found once for every subtree and kept in hasBlobs.
+     * @param prefix path of the tree, "" for a root tree
+     * @param hasBlobs tree id --> whether a blob of blobIds is under it, shared by the calls for many trees
+     * @param result file name ("dir/file" for a file in a subdirectory) --> blob id
+     */
+    public static void findFiles(String treeId, String prefix, Set<String> blobIds,
+                                 Map<String, Boolean> hasBlobs, Map<String, String> result) {
+        if (!hasBlobs(treeId, blobIds, hasBlobs)) {
+            return;
+        }
+        Tree tree = readTree(OBJECTS_DIR, PACKS_DIR, treeId);
+        for (Map.Entry<String, String> entry : tree.files.entrySet()) {
+            if (blobIds.contains(entry.getValue())) {
+                result.put(prefix + entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : tree.dirs.entrySet()) {
+            findFiles(entry.getValue(), prefix + entry.getKey() + "/", blobIds, hasBlobs, result);
+        }
+    }
+
+    private static boolean hasBlobs(String treeId, Set<String> blobIds, Map<String, Boolean> hasBlobs) {
+        Boolean known = hasBlobs.get(treeId);
+        if (known != null) {
+            return known;
+        }
+        Tree tree = readTree(OBJECTS_DIR, PACKS_DIR, treeId);
+        boolean found = false;
+        for (String blobId : tree.files.values()) {
+            found |= blobIds.contains(blobId);
+        }
+        for (String subtreeId : tree.dirs.values()) {
+            found |= hasBlobs(subtreeId, blobIds, hasBlobs); // every subtree is known after this
+        }
+        hasBlobs.put(treeId, found);
+        return found;
+    }
+
+    /**
+     * compare two trees, a subtree with the same id in both is skipped without being read
+     * @param oldTreeId null for no files
+     * @param newTreeId null for no files
+     * @return file name --> change, only for the files which differ
+     */
+    public static TreeMap<String, Change> diff(String oldTreeId, String newTreeId) {
+        TreeMap<String, Change> result = new TreeMap<>();
+        diff(oldTreeId, newTreeId, "", result);
+        return result;
+    }
+
+    private static void diff(String oldTreeId, String newTreeId, String prefix, Map<String, Change> result) {
+        if (Objects.equals(oldTreeId, newTreeId)) {
+            return;
+        }
+        Tree oldTree = oldTreeId == null ? new Tree() : readTree(OBJECTS_DIR, PACKS_DIR, oldTreeId);
+        Tree newTree = newTreeId == null ? new Tree() : readTree(OBJECTS_DIR, PACKS_DIR, newTreeId);
+        Set<String> fileNames = new TreeSet<>(oldTree.files.keySet());
+        fileNames.addAll(newTree.files.keySet());
+        for (String fileName : fileNames) {
+            String oldVersion = oldTree.files.get(fileName);
+            String newVersion = newTree.files.get(fileName);
+            if (!Objects.equals(oldVersion, newVersion)) {
+                result.put(prefix + fileName, new Change(oldVersion, newVersion));
+            }
+        }
+        Set<String> dirNames = new TreeSet<>(oldTree.dirs.keySet());
+        dirNames.addAll(newTree.dirs.keySet());
+        for (String dirName : dirNames) {
+            diff(oldTree.dirs.get(dirName), newTree.dirs.get(dirName), prefix + dirName + "/", result);
+        }
+    }
+
+    /**
+     * compare two flat file maps, for commits written before trees
+     * @return file name --> change, only for the files which differ
+     */
+    public static TreeMap<String, Change> diff(Map<String, String> oldFiles, Map<String, String> newFiles) {
+        TreeMap<String, Change> result = new TreeMap<>();
+        Set<String> fileNames = new HashSet<>(oldFiles.keySet());
+        fileNames.addAll(newFiles.keySet());
+        for (String fileName : fileNames) {
+            if (!Objects.equals(oldFiles.get(fileName), newFiles.get(fileName))) {
+                result.put(fileName, new Change(oldFiles.get(fileName), newFiles.get(fileName)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * copy a tree with all its subtrees and blobs to another repository. a tree which the target has is skipped
+     * with everything under it, the tree itself is copied last.
+     * @param copied gets the number of bytes of every object copied (a blob the target has is not copied)
+     */
+    public static void copyTree(File fromDir, File fromPacksDir, File toDir, File toPacksDir, String treeId,
+                                LongConsumer copied) {
+        if (ObjectUtils.hasObject(toDir, toPacksDir, treeId)) {
+            return;
+        }
+        Tree tree = readTree(fromDir, fromPacksDir, treeId);
+        for (String blobId : tree.files.values()) {
+            long bytes = ObjectUtils.copyObject(fromDir, fromPacksDir, toDir, toPacksDir, blobId);
+            if (bytes > 0) {
+                copied.accept(bytes);
+            }
+        }
+        for (String subtreeId : tree.dirs.values()) {
+            copyTree(fromDir, fromPacksDir, toDir, toPacksDir, subtreeId, copied);
+        }
+        copied.accept(ObjectUtils.copyObject(fromDir, fromPacksDir, toDir, toPacksDir, treeId));
+    }
+
+    private static Tree readTree(File dir, File packsDir, String treeId) {
+        Tree tree = treeCache.get(treeId);
+        if (tree != null) {
+            return tree;
+        }
+        byte[] content = ObjectUtils.readObject(dir, packsDir, ObjectUtils.TREE, treeId);
+        if (content == null) {
+            throw new IllegalArgumentException("tree " + treeId + " does not exist");
+        }
+        tree = deserialize(content);
+        treeCache.put(treeId, tree);
+        return tree;
+    }
+
+    private static byte[] serialize(Tree tree) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> entry : tree.files.entrySet()) {
+            writeEntry(out, FILE_MODE, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : tree.dirs.entrySet()) {
+            writeEntry(out, DIR_MODE, entry.getKey(), entry.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeEntry(ByteArrayOutputStream out, String mode, String name, String id) {
+        out.writeBytes((mode + " " + name + "\0").getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(fromHex(id));
+    }
+
+    private static Tree deserialize(byte[] content) {
+        Tree tree = new Tree();
+        int position = 0;
+        while (position < content.length) {
+            int space = position;
+            while (content[space] != ' ') {
+                space++;
+            }
+            int end = space + 1;
+            while (content[end] != 0) {
+                end++;
+            }
+            String mode = new String(content, position, space - position, StandardCharsets.UTF_8);
+            String name = new String(content, space + 1, end - space - 1, StandardCharsets.UTF_8);
+            (mode.equals(DIR_MODE) ? tree.dirs : tree.files).put(name, toHex(content, end + 1, ID_LENGTH));
+            position = end + 1 + ID_LENGTH;
+        }
+        return tree;
+    }
+}
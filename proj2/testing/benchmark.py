@@ -0,0 +1,364 @@
+import sys, time
+from subprocess import check_call, DEVNULL, PIPE, Popen
+from getopt import getopt, GetoptError
+from os import environ, getcwd, access, W_OK, makedirs, walk
+from os.path import abspath, dirname, exists, getsize, join
+from shutil import rmtree
+from statistics import median
+from tempfile import mkdtemp
+
+SHORT_USAGE = """\
+Usage: python3 benchmark.py OPTIONS BENCHMARK ...
+
+   OPTIONS may include
+       --progdir=DIR  Directory or JAR files containing gitlet application
+       --files=N      Number of files in the working tree (default 10000).
+       --rounds=N     Number of timed runs of each measured command
+                      (default 5), the median is reported.
+       --writers=N    Pass -Dgitlet.writers=N to gitlet, e.g. 1 to write
+                      files without the writer pool.
+       --keep         Keep the benchmark directory.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+BENCHMARK is one of:
+
+   add       N new files in a directory tree are added by one command,
+             then added again unchanged.
+   checkout  A commit of N files is checked out from a commit with no
+             files (every file is written), then the other way round
+             (every file is deleted).
+   repack    A file of N lines gets a few lines changed in each of 50
+             commits, then repack is run. The size of the objects before
+             and after repack is reported.
+   merge     Two branches change other lines of the same N files, then
+             the branches are merged (every file is merged line by line
+             without conflicts).
+   log       A history of N commits is printed by log, then the newest
+             10 commits are printed by log -n 10.
+   log-path  A history of N commits, each changing one of 100 files in 10
+             directories, is printed by log -- for one file and for one
+             directory.
+   grep      N files in a directory tree get 1% of them changed in each of
+             20 commits, then a line is searched by grep in the head
+             commit and by grep --all-history in every commit.
+   fetch     A remote history of N commits is fetched once, then 10 new
+             remote commits (each changing one of 100 files) are fetched
+             by each measured fetch.
+   push      A local history of N commits is pushed once, then 10 new
+             local commits (each changing one of 100 files) are pushed
+             by each measured push.
+   find      A history of N commits is searched by find for one message
+             and by find --grep for a word, then printed by global-log.
+
+Commands which are not measured are run in one JVM by "gitlet serve".
+The measured commands run as separate gitlet processes, as the tester
+does.
+"""
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def gitlet(repo, *args):
+    check_call(JAVA_COMMAND + list(args), cwd=repo, stdout=DEVNULL)
+
+def serve_line(args):
+    """The command line of ARGS for gitlet serve, every argument quoted."""
+    return " ".join('"' + a.replace("\\", "\\\\").replace('"', '\\"') + '"'
+                    for a in args) + "\n"
+
+def batch(repo, commands):
+    """Run COMMANDS (lists of arguments) by one gitlet serve in directory
+    REPO.  Raises RuntimeError if any of them fails."""
+    proc = Popen(JAVA_COMMAND + ["serve"], cwd=repo, stdin=PIPE, stdout=PIPE)
+    out, _ = proc.communicate("".join(map(serve_line, commands)).encode())
+    if proc.returncode != 0:
+        raise RuntimeError("gitlet serve failed")
+    position = 0
+    for command in commands:
+        # every answer is "status [exit status] [length]\n" and length bytes
+        end = out.index(b"\n", position)
+        status, length = out[position:end].split()[1:]
+        position = end + 1 + int(length)
+        output = out[end + 1:position]
+        if status != b"0":
+            raise RuntimeError("{} failed: {}".format(
+                " ".join(command), output.decode(errors="replace")))
+
+def timed(repo, *args):
+    start = time.perf_counter()
+    gitlet(repo, *args)
+    return time.perf_counter() - start
+
+def report(name, seconds):
+    print("{:<40} {:8.3f} s (median of {})".format(name, median(seconds), len(seconds)))
+
+def make_files(repo, nested):
+    """Write NUM_FILES files in REPO, in 100 directories if NESTED."""
+    for i in range(num_files):
+        name = "f{:06d}.txt".format(i)
+        if nested:
+            name = join("d{:02d}".format(i % 100), name)
+            makedirs(join(repo, dirname(name)), exist_ok=True)
+        with open(join(repo, name), "w") as f:
+            f.write("file {}\n".format(i) * 16)
+
+def bench_add(repo):
+    added, readded = [], []
+    for _ in range(rounds):
+        rmtree(repo)
+        makedirs(repo)
+        gitlet(repo, "init")
+        make_files(repo, True)
+        added.append(timed(repo, "add", "."))
+        readded.append(timed(repo, "add", "."))
+    report("add of {} new files".format(num_files), added)
+    report("add of {} unchanged files".format(num_files), readded)
+
+def bench_checkout(repo):
+    gitlet(repo, "init")
+    gitlet(repo, "branch", "empty")
+    make_files(repo, False)
+    gitlet(repo, "add", ".")
+    gitlet(repo, "commit", "base")
+    written, deleted = [], []
+    for _ in range(rounds):
+        deleted.append(timed(repo, "checkout", "empty"))
+        written.append(timed(repo, "checkout", "master"))
+    report("checkout writing {} files".format(num_files), written)
+    report("checkout deleting {} files".format(num_files), deleted)
+
+def dir_size(path):
+    return sum(getsize(join(root, name))
+               for root, _, names in walk(path) for name in names)
+
+def bench_repack(repo):
+    gitlet(repo, "init")
+    lines = ["line {} of a config file\n".format(i) for i in range(num_files)]
+    for i in range(50):
+        for j in range(5):
+            lines[(i * 7919 + j * 104729) % num_files] = "changed {} {}\n".format(i, j)
+        with open(join(repo, "config.txt"), "w") as f:
+            f.write("".join(lines))
+        gitlet(repo, "add", "config.txt")
+        gitlet(repo, "commit", "change {}".format(i))
+    objects = join(repo, ".gitlet", "objects")
+    packs = join(repo, ".gitlet", "packs")
+    before = dir_size(objects) + dir_size(packs)
+    seconds = timed(repo, "repack")
+    after = dir_size(objects) + dir_size(packs)
+    report("repack of 50 versions of a file of {} lines".format(num_files), [seconds])
+    print("objects: {} bytes loose, {} bytes packed".format(before, after))
+
+def change_files(repo, line, text):
+    """Replace line LINE of every file written by make_files with TEXT."""
+    for i in range(num_files):
+        lines = ["file {}\n".format(i)] * 16
+        lines[line] = "{} {}\n".format(text, i)
+        with open(join(repo, "f{:06d}.txt".format(i)), "w") as f:
+            f.write("".join(lines))
+
+def bench_merge(repo):
+    gitlet(repo, "init")
+    make_files(repo, False)
+    batch(repo, [["add", "."], ["commit", "base"], ["branch", "other"]])
+    change_files(repo, 0, "first line on master")
+    batch(repo, [["add", "."], ["commit", "master"], ["checkout", "other"]])
+    change_files(repo, 15, "last line on other")
+    batch(repo, [["add", "."], ["commit", "other"], ["checkout", "master"]])
+    with open(join(repo, ".gitlet", "branches", "master")) as f:
+        master = f.read().strip()
+    seconds = []
+    for _ in range(rounds):
+        seconds.append(timed(repo, "merge", "other"))
+        gitlet(repo, "reset", master)
+    report("merge of {} files changed on both sides".format(num_files), seconds)
+
+def bench_log(repo):
+    gitlet(repo, "init")
+    batch(repo, [["commit", "commit {}".format(i)] for i in range(num_files)])
+    full, newest = [], []
+    for _ in range(rounds):
+        full.append(timed(repo, "log"))
+        newest.append(timed(repo, "log", "-n", "10"))
+    report("log of {} commits".format(num_files), full)
+    report("log -n 10 of {} commits".format(num_files), newest)
+
+def bench_log_path(repo):
+    gitlet(repo, "init")
+    names = [join("d{}".format(i % 10), "f{:02d}.txt".format(i)) for i in range(100)]
+    for i in range(0, num_files, 100):
+        # a working file is staged by its own add, so each commit changes one file
+        commands = []
+        for j, name in enumerate(names[:num_files - i]):
+            makedirs(join(repo, dirname(name)), exist_ok=True)
+            with open(join(repo, name), "w") as f:
+                f.write("version {}\n".format(i + j))
+            commands += [["add", name], ["commit", "change {}".format(i + j)]]
+        batch(repo, commands)
+    one_file, one_dir = [], []
+    for _ in range(rounds):
+        one_file.append(timed(repo, "log", "--", names[7]))
+        one_dir.append(timed(repo, "log", "--", "d7"))
+    report("log -- file of {} commits".format(num_files), one_file)
+    report("log -- dir of {} commits".format(num_files), one_dir)
+
+def bench_grep(repo):
+    gitlet(repo, "init")
+    make_files(repo, True)
+    commands = [["add", "."], ["commit", "base"]]
+    batch(repo, commands)
+    for i in range(20):
+        changed = []
+        for j in range(i, num_files, 100):
+            name = join("d{:02d}".format(j % 100), "f{:06d}.txt".format(j))
+            with open(join(repo, name), "a") as f:
+                f.write("change {}\n".format(i))
+            changed.append(name)
+        batch(repo, [["add"] + changed, ["commit", "change {}".format(i)]])
+    head, history = [], []
+    for _ in range(rounds):
+        head.append(timed(repo, "grep", "file 7.*"))
+        history.append(timed(repo, "grep", "change 1[0-9]", "--all-history"))
+    report("grep in {} files".format(num_files), head)
+    report("grep --all-history in 21 commits", history)
+
+def bench_fetch(repo):
+    origin, local = join(repo, "origin"), join(repo, "local")
+    makedirs(origin)
+    makedirs(local)
+    gitlet(origin, "init")
+    names = ["f{:02d}.txt".format(i) for i in range(100)]
+    for name in names:
+        with open(join(origin, name), "w") as f:
+            f.write("version 0\n")
+    batch(origin, [["add", "."], ["commit", "base"]]
+          + [["commit", "commit {}".format(i)] for i in range(num_files)])
+    gitlet(local, "init")
+    gitlet(local, "add-remote", "origin", join("..", "origin", ".gitlet"))
+    first = timed(local, "fetch", "origin", "master")
+    fetched = []
+    for r in range(rounds):
+        commands = []
+        for i in range(10):
+            name = names[(r * 10 + i) % 100]
+            with open(join(origin, name), "w") as f:
+                f.write("version {}\n".format(r + 1))
+            commands += [["add", name], ["commit", "round {} change {}".format(r, i)]]
+        batch(origin, commands)
+        fetched.append(timed(local, "fetch", "origin", "master"))
+    report("first fetch of {} commits".format(num_files), [first])
+    report("fetch of 10 new commits", fetched)
+
+def bench_push(repo):
+    local, origin = join(repo, "local"), join(repo, "origin")
+    makedirs(local)
+    makedirs(origin)
+    gitlet(origin, "init")
+    gitlet(local, "init")
+    names = ["f{:02d}.txt".format(i) for i in range(100)]
+    for name in names:
+        with open(join(local, name), "w") as f:
+            f.write("version 0\n")
+    batch(local, [["add", "."], ["commit", "base"]]
+          + [["commit", "commit {}".format(i)] for i in range(num_files)])
+    gitlet(local, "add-remote", "origin", join("..", "origin", ".gitlet"))
+    first = timed(local, "push", "origin", "master")
+    pushed = []
+    for r in range(rounds):
+        commands = []
+        for i in range(10):
+            name = names[(r * 10 + i) % 100]
+            with open(join(local, name), "w") as f:
+                f.write("version {}\n".format(r + 1))
+            commands += [["add", name], ["commit", "round {} change {}".format(r, i)]]
+        batch(local, commands)
+        pushed.append(timed(local, "push", "origin", "master"))
+    report("first push of {} commits".format(num_files), [first])
+    report("push of 10 new commits", pushed)
+
+def bench_find(repo):
+    gitlet(repo, "init")
+    batch(repo, [["commit", "commit {} of the history".format(i)] for i in range(num_files)])
+    found, grepped, logged = [], [], []
+    for _ in range(rounds):
+        found.append(timed(repo, "find", "commit 7 of the history"))
+        grepped.append(timed(repo, "find", "--grep", " 7 "))
+        logged.append(timed(repo, "global-log"))
+    report("find in {} commits".format(num_files), found)
+    report("find --grep in {} commits".format(num_files), grepped)
+    report("global-log of {} commits".format(num_files), logged)
+
+BENCHMARKS = {
+    "add": bench_add,
+    "checkout": bench_checkout,
+    "repack": bench_repack,
+    "merge": bench_merge,
+    "log": bench_log,
+    "log-path": bench_log_path,
+    "fetch": bench_fetch,
+    "push": bench_push,
+    "find": bench_find,
+    "grep": bench_grep,
+}
+
+if __name__ == "__main__":
+    prog_dir = None
+    num_files = 10000
+    rounds = 5
+    writers = None
+    keep = False
+
+    try:
+        opts, benchmarks = \
+            getopt(sys.argv[1:], '',
+                   ['progdir=', 'files=', 'rounds=', 'writers=', 'keep'])
+        for opt, val in opts:
+            if opt == "--progdir":
+                prog_dir = abspath(val)
+            elif opt == "--files":
+                num_files = int(val)
+            elif opt == "--rounds":
+                rounds = int(val)
+            elif opt == "--writers":
+                writers = int(val)
+            elif opt == "--keep":
+                keep = True
+        if prog_dir is None:
+            prog_dir = abspath(getcwd())
+            k = 10
+            while k > 0 and access(prog_dir, W_OK):
+                k -= 1
+                if exists(join(prog_dir, 'gitlet', 'Main.class')):
+                    break
+                prog_dir = dirname(prog_dir)
+            else:
+                print("Could not find gitlet.Main.", file=sys.stderr)
+                sys.exit(1)
+    except (GetoptError, ValueError):
+        Usage()
+    if not benchmarks:
+        print(USAGE)
+        sys.exit(0)
+    for name in benchmarks:
+        if name not in BENCHMARKS:
+            Usage()
+
+    JAVA_COMMAND = ["java", "-cp", prog_dir]
+    if writers is not None:
+        JAVA_COMMAND.append("-Dgitlet.writers={}".format(writers))
+    JAVA_COMMAND.append("gitlet.Main")
+
+    tmpdir = mkdtemp(prefix="gitlet-bench-")
+    try:
+        for name in benchmarks:
+            repo = join(tmpdir, name)
+            makedirs(repo)
+            BENCHMARKS[name](repo)
+    finally:
+        if keep:
+            print("Benchmark directory: {}".format(tmpdir))
+        else:
+            rmtree(tmpdir, ignore_errors=True)
@@ -0,0 +1,224 @@
+import sys
+from subprocess import run, PIPE, STDOUT
+from getopt import getopt, GetoptError
+from os import getcwd, access, W_OK, listdir, makedirs
+from os.path import abspath, dirname, exists, isdir, join
+from shutil import copytree, rmtree
+from tempfile import mkdtemp
+
+USAGE = """\
+Usage: python3 migrate-test.py [ --progdir=DIR ] [ --keep ]
+       python3 migrate-test.py --make-fixture=DIR
+
+Checks "gitlet migrate" on fixtures/baseline-flat, a repository created by
+the first version of gitlet: commits, objects and staged files directly in
+.gitlet/commits, .gitlet/objects and .gitlet/staged-files, without fan-out
+subdirectories, packs or the commit-graph. The repository must be read the
+same before and after migrate, and status, commit, checkout, repack, log
+and grep must work on it.
+
+   --progdir=DIR       Directory or JAR files containing gitlet application
+   --keep              Keep the test directory.
+   --make-fixture=DIR  Create fixtures/baseline-flat again, by the classes
+                       of the first version of gitlet in DIR.
+"""
+
+FIXTURE = join(dirname(abspath(__file__)), "fixtures", "baseline-flat")
+
+# the commands which created the fixture, (file name, contents) are written
+FIXTURE_COMMANDS = [
+    ["init"],
+    ("a.txt", "hello\nworld\n"), ("b.txt", "bee\n"),
+    ["add", "a.txt"], ["add", "b.txt"], ["commit", "first"],
+    ["branch", "other"],
+    ("a.txt", "hello\nthere\n"),
+    ["add", "a.txt"], ["commit", "second"],
+    ["checkout", "other"],
+    ("c.txt", "sea\n"),
+    ["add", "c.txt"], ["commit", "on other"],
+    ["checkout", "master"],
+    ["merge", "other"],
+    # left staged, the staged contents are migrated too
+    ("d.txt", "dee\n"),
+    ["add", "d.txt"], ["rm", "b.txt"],
+]
+
+STATUS = """\
+=== Branches ===
+*master
+other
+
+=== Staged Files ===
+d.txt
+
+=== Removed Files ===
+b.txt
+
+=== Modifications Not Staged For Commit ===
+
+=== Untracked Files ===
+
+"""
+
+def gitlet(repo, *args):
+    """Run ARGS by a gitlet process, return (exit status, output)."""
+    result = run(JAVA_COMMAND + list(args), cwd=repo, stdout=PIPE,
+                 stderr=STDOUT)
+    return result.returncode, result.stdout.decode()
+
+def output(repo, *args):
+    """The output of ARGS, which must succeed."""
+    status, out = gitlet(repo, *args)
+    expect(status, 0, " ".join(args) + " status")
+    return out
+
+def write(repo, name, text):
+    with open(join(repo, name), "w") as f:
+        f.write(text)
+
+def read(repo, name):
+    with open(join(repo, name)) as f:
+        return f.read()
+
+def expect(actual, expected, what):
+    if actual != expected:
+        raise AssertionError("{}: expected {!r}, got {!r}"
+                             .format(what, expected, actual))
+
+def entries(log):
+    """The entries of a global-log, in any order."""
+    return sorted(log.split("===\n"))
+
+def commit_ids(log):
+    return [line.split()[1] for line in log.splitlines()
+            if line.startswith("commit ")]
+
+def flat_files(repo):
+    """Objects still directly in the object directories of REPO."""
+    result = []
+    for name in ["commits", "objects", "staging"]:
+        path = join(repo, ".gitlet", name)
+        if isdir(path):
+            result += [join(name, f) for f in listdir(path)
+                       if len(f) == 40 and not isdir(join(path, f))]
+    return result
+
+def test_migrate(repo):
+    # an old repository is read before it is migrated
+    expect(output(repo, "status"), STATUS, "status before migrate")
+    log = output(repo, "log")
+    global_log = output(repo, "global-log")
+    ids = commit_ids(log)
+    expect(len(ids), 4, "commits in log")
+    if not flat_files(repo):
+        raise AssertionError("the fixture is not a flat repository")
+
+    expect(output(repo, "migrate"), "", "migrate")
+    expect(flat_files(repo), [], "objects left by migrate")
+    expect(output(repo, "status"), STATUS, "status after migrate")
+    expect(output(repo, "log"), log, "log after migrate")
+    expect(entries(output(repo, "global-log")), entries(global_log),
+           "global-log after migrate")
+    expect(output(repo, "migrate"), "", "migrate again")
+    expect(output(repo, "log"), log, "log after migrating twice")
+
+    # the changed-path filters are computed by migrate
+    expect(commit_ids(output(repo, "log", "--", "c.txt")), [ids[0]],
+           "log -- c.txt")
+    expect(commit_ids(output(repo, "log", "--", "a.txt")),
+           [ids[1], ids[2]], "log -- a.txt")
+
+    # old versions are checked out by abbreviated ids
+    expect(output(repo, "checkout", ids[2][:8], "--", "a.txt"), "",
+           "checkout an old a.txt")
+    expect(read(repo, "a.txt"), "hello\nworld\n", "old a.txt")
+    expect(output(repo, "checkout", "--", "a.txt"), "", "checkout a.txt")
+    expect(read(repo, "a.txt"), "hello\nthere\n", "a.txt")
+
+    # the files staged by the old version are committed
+    expect(output(repo, "commit", "third"), "", "commit")
+    expect(output(repo, "checkout", "other"), "", "checkout other")
+    expect(read(repo, "a.txt"), "hello\nworld\n", "a.txt of other")
+    expect(read(repo, "b.txt"), "bee\n", "b.txt of other")
+    other_id = commit_ids(output(repo, "log"))[0]
+    expect(exists(join(repo, "d.txt")), False, "d.txt on other")
+    expect(output(repo, "checkout", "master"), "", "checkout master")
+    expect(read(repo, "d.txt"), "dee\n", "d.txt")
+    expect(exists(join(repo, "b.txt")), False, "b.txt on master")
+    log = output(repo, "log")
+    global_log = output(repo, "global-log")
+
+    expect(output(repo, "repack"), "", "repack")
+    expect(flat_files(repo), [], "objects left by repack")
+    expect(output(repo, "log"), log, "log after repack")
+    expect(entries(output(repo, "global-log")), entries(global_log),
+           "global-log after repack")
+    expect(output(repo, "find", "first"), ids[2] + "\n", "find")
+
+    expect(output(repo, "grep", "there"), "a.txt:2:there\n", "grep")
+    ids = commit_ids(log)
+    expect(output(repo, "grep", "world", "--all-history"),
+           "".join(id + ":a.txt:2:world\n" for id in [other_id, ids[3]]),
+           "grep --all-history")
+    expect(output(repo, "status"), STATUS.replace("d.txt\n", "")
+           .replace("b.txt\n", ""), "status at the end")
+
+def make_fixture(classes):
+    rmtree(FIXTURE, ignore_errors=True)
+    makedirs(FIXTURE)
+    for command in FIXTURE_COMMANDS:
+        if isinstance(command, tuple):
+            write(FIXTURE, *command)
+        else:
+            run(["java", "-cp", classes, "gitlet.Main"] + command,
+                cwd=FIXTURE, check=True)
+
+if __name__ == "__main__":
+    prog_dir = None
+    keep = False
+    try:
+        opts, args = getopt(sys.argv[1:], '',
+                            ['progdir=', 'keep', 'make-fixture='])
+        for opt, val in opts:
+            if opt == "--progdir":
+                prog_dir = abspath(val)
+            elif opt == "--keep":
+                keep = True
+            elif opt == "--make-fixture":
+                make_fixture(abspath(val))
+                sys.exit(0)
+        if args:
+            raise GetoptError("no arguments")
+        if prog_dir is None:
+            prog_dir = abspath(getcwd())
+            k = 10
+            while k > 0 and access(prog_dir, W_OK):
+                k -= 1
+                if exists(join(prog_dir, 'gitlet', 'Main.class')):
+                    break
+                prog_dir = dirname(prog_dir)
+            else:
+                print("Could not find gitlet.Main.", file=sys.stderr)
+                sys.exit(1)
+    except GetoptError:
+        print(USAGE, file=sys.stderr)
+        sys.exit(1)
+
+    JAVA_COMMAND = ["java", "-ea", "-cp", prog_dir, "gitlet.Main"]
+
+    tmpdir = mkdtemp(prefix="gitlet-migrate-")
+    repo = join(tmpdir, "repo")
+    copytree(FIXTURE, repo)
+    try:
+        test_migrate(repo)
+        print("migrate: OK")
+        failed = False
+    except AssertionError as excp:
+        print("migrate: FAILED ({})".format(excp))
+        failed = True
+    finally:
+        if keep:
+            print("Test directory: {}".format(tmpdir))
+        else:
+            rmtree(tmpdir, ignore_errors=True)
+    sys.exit(1 if failed else 0)
@@ -0,0 +1,203 @@
+import sys
+from subprocess import run, PIPE, STDOUT, Popen
+from getopt import getopt, GetoptError
+from os import getcwd, access, W_OK, mkdir, rmdir, remove
+from os.path import abspath, dirname, exists, join
+from shutil import rmtree
+from tempfile import mkdtemp
+
+USAGE = """\
+Usage: python3 serve-test.py [ --progdir=DIR ] [ --keep ]
+
+Checks "gitlet serve": every answer is "status [exit status] [length]"
+and length bytes of output, a failing command does not break the commands
+after it, and changes made by other gitlet processes between commands are
+seen. Every command run by serve must print the same as a gitlet process.
+
+   --progdir=DIR  Directory or JAR files containing gitlet application
+   --keep         Keep the test directory.
+"""
+
+class Serve:
+    """One "gitlet serve" session in directory REPO."""
+
+    def __init__(self, repo):
+        self.proc = Popen(JAVA_COMMAND + ["serve"], cwd=repo,
+                          stdin=PIPE, stdout=PIPE)
+
+    def send(self, line):
+        """Send LINE, return (exit status, output) of its answer."""
+        self.proc.stdin.write(line.encode() + b"\n")
+        self.proc.stdin.flush()
+        header = self.proc.stdout.readline().decode()
+        fields = header.split()
+        if len(fields) != 3 or fields[0] != "status" \
+           or not fields[1].isdigit() or not fields[2].isdigit():
+            raise AssertionError("bad answer header: {!r}".format(header))
+        output = self.proc.stdout.read(int(fields[2]))
+        if len(output) != int(fields[2]):
+            raise AssertionError("answer shorter than {}".format(fields[2]))
+        return int(fields[1]), output.decode()
+
+    def run(self, *args):
+        return self.send(" ".join('"' + a.replace("\\", "\\\\")
+                                  .replace('"', '\\"') + '"' for a in args))
+
+    def close(self):
+        """End the session by "quit", it must exit with status 0."""
+        self.proc.stdin.write(b"quit\n")
+        self.proc.stdin.close()
+        rest = self.proc.stdout.read()
+        if self.proc.wait() != 0 or rest:
+            raise AssertionError("serve did not end cleanly: {!r}"
+                                 .format(rest))
+
+def gitlet(repo, *args):
+    """Run ARGS by a gitlet process, return (exit status, output)."""
+    result = run(JAVA_COMMAND + list(args), cwd=repo, stdout=PIPE,
+                 stderr=STDOUT)
+    return result.returncode, result.stdout.decode()
+
+def write(repo, name, text):
+    with open(join(repo, name), "w") as f:
+        f.write(text)
+
+def expect(actual, expected, what):
+    if actual != expected:
+        raise AssertionError("{}: expected {!r}, got {!r}"
+                             .format(what, expected, actual))
+
+def same_as_process(serve, repo, *args):
+    """Run ARGS by SERVE and by a gitlet process, both must succeed and
+    print the same.  ARGS must not change the repository."""
+    answer = serve.run(*args)
+    expect(answer, gitlet(repo, *args), " ".join(args))
+    expect(answer[0], 0, " ".join(args) + " status")
+    return answer[1]
+
+def test_framing(repo):
+    serve = Serve(repo)
+    expect(serve.run("init"), (0, ""), "init")
+    write(repo, "a.txt", "a\n")
+    write(repo, "b b.txt", "b\n")
+    expect(serve.run("add", "a.txt"), (0, ""), "add a.txt")
+    expect(serve.run("add", "b b.txt"), (0, ""), "add with a space")
+    expect(serve.run("commit", 'two "files"'), (0, ""), "commit")
+    # empty lines are skipped, they get no answer
+    serve.proc.stdin.write(b"\n   \n")
+    log = same_as_process(serve, repo, "log")
+    if 'two "files"' not in log:
+        raise AssertionError("log misses the quoted message: " + log)
+    same_as_process(serve, repo, "status")
+    same_as_process(serve, repo, "find", "nothing like this")
+    expect(serve.send('log "x'), (1, "Unmatched quote.\n"),
+           "unmatched quote")
+    expect(serve.run("serve"), (1, "serve cannot be run by serve.\n"),
+           "serve in serve")
+    expect(serve.run("checkout", "master"),
+           gitlet(repo, "checkout", "master"), "message of a command")
+    serve.close()
+
+def test_recovery(repo):
+    serve = Serve(repo)
+    remove(join(repo, "a.txt"))
+    mkdir(join(repo, "a.txt"))
+    status, output = serve.run("checkout", "--", "a.txt")
+    expect(status, 1, "checkout over a directory")
+    if "a.txt" not in output:
+        raise AssertionError("no reason for the failure: " + output)
+    # the commands after a failing one work as in a new process
+    rmdir(join(repo, "a.txt"))
+    same_as_process(serve, repo, "status")
+    expect(serve.run("checkout", "--", "a.txt"), (0, ""), "checkout again")
+    with open(join(repo, "a.txt")) as f:
+        expect(f.read(), "a\n", "a.txt checked out")
+    write(repo, "c.txt", "c\n")
+    expect(serve.run("add", "c.txt"), (0, ""), "add after failure")
+    expect(serve.run("commit", "c"), (0, ""), "commit after failure")
+    same_as_process(serve, repo, "log")
+    same_as_process(serve, repo, "status")
+    serve.close()
+
+def test_reload(repo):
+    serve = Serve(repo)
+    same_as_process(serve, repo, "status")
+    # the index is changed by another process
+    write(repo, "d.txt", "d\n")
+    expect(gitlet(repo, "add", "d.txt"), (0, ""), "add by a process")
+    expect(gitlet(repo, "rm", "c.txt"), (0, ""), "rm by a process")
+    if "d.txt" not in same_as_process(serve, repo, "status"):
+        raise AssertionError("serve did not see the staged d.txt")
+    # HEAD, the branch and the commit graph are changed by another process
+    expect(gitlet(repo, "commit", "d"), (0, ""), "commit by a process")
+    expect(gitlet(repo, "branch", "other"), (0, ""), "branch by a process")
+    same_as_process(serve, repo, "log")
+    same_as_process(serve, repo, "status")
+    expect(gitlet(repo, "checkout", "other"), (0, ""), "checkout other")
+    expect(serve.run("checkout", "other"),
+           (0, "No need to checkout the current branch.\n"),
+           "checkout other again")
+    expect(gitlet(repo, "checkout", "master"), (0, ""), "checkout master")
+    # the packs are changed by another process
+    expect(gitlet(repo, "repack")[0], 0, "repack by a process")
+    same_as_process(serve, repo, "global-log")
+    same_as_process(serve, repo, "grep", "d")
+    same_as_process(serve, repo, "status")
+    # a command of serve is seen by the other process too
+    write(repo, "e.txt", "e\n")
+    expect(serve.run("add", "e.txt"), (0, ""), "add by serve")
+    expect(serve.run("commit", "e"), (0, ""), "commit by serve")
+    expect(gitlet(repo, "log")[1], serve.run("log")[1], "log after serve")
+    serve.close()
+
+TESTS = [("framing", test_framing),
+         ("recovery", test_recovery),
+         ("reload", test_reload)]
+
+if __name__ == "__main__":
+    prog_dir = None
+    keep = False
+    try:
+        opts, args = getopt(sys.argv[1:], '', ['progdir=', 'keep'])
+        for opt, val in opts:
+            if opt == "--progdir":
+                prog_dir = abspath(val)
+            elif opt == "--keep":
+                keep = True
+        if args:
+            raise GetoptError("no arguments")
+        if prog_dir is None:
+            prog_dir = abspath(getcwd())
+            k = 10
+            while k > 0 and access(prog_dir, W_OK):
+                k -= 1
+                if exists(join(prog_dir, 'gitlet', 'Main.class')):
+                    break
+                prog_dir = dirname(prog_dir)
+            else:
+                print("Could not find gitlet.Main.", file=sys.stderr)
+                sys.exit(1)
+    except GetoptError:
+        print(USAGE, file=sys.stderr)
+        sys.exit(1)
+
+    JAVA_COMMAND = ["java", "-ea", "-cp", prog_dir, "gitlet.Main"]
+
+    # the tests run one after another in the same repository
+    repo = mkdtemp(prefix="gitlet-serve-")
+    failed = 0
+    try:
+        for name, test in TESTS:
+            try:
+                test(repo)
+                print("serve {}: OK".format(name))
+            except AssertionError as excp:
+                failed += 1
+                print("serve {}: FAILED ({})".format(name, excp))
+                break
+    finally:
+        if keep:
+            print("Test directory: {}".format(repo))
+        else:
+            rmtree(repo, ignore_errors=True)
+    sys.exit(1 if failed else 0)